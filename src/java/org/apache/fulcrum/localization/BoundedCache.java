@@ -0,0 +1,325 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A thread-safe cache holding at most a fixed number of entries.
+ * Reads never lock.  When the cache overflows, the least recently
+ * used entries are dropped until it is down to three quarters of its
+ * capacity again.  A maximum size of zero disables caching.
+ *
+ * <p>
+ * Recency is approximated by a clock which advances with every
+ * insertion, so reads only need to write to an entry the first time
+ * it is read after an insertion.
+ * </p>
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ *
+ * @version $Id$
+ */
+final class BoundedCache<K, V>
+{
+    /** The cached entries. */
+    private final ConcurrentHashMap<K, Entry<V>> map;
+
+    /** The maximum number of entries. */
+    private final int maxSize;
+
+    /** Advances with every insertion. */
+    private final AtomicLong clock = new AtomicLong();
+
+    /** Held by the thread evicting entries. */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** The values being computed by {@link #computeIfAbsent(Object, Function)}. */
+    private final SingleFlight<K, V> loads = new SingleFlight<K, V>();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize the maximum number of entries, <code>0</code>
+     * to disable caching
+     */
+    BoundedCache(int maxSize)
+    {
+        this.maxSize = Math.max(0, maxSize);
+        this.map = new ConcurrentHashMap<K, Entry<V>>(Math.min(this.maxSize, 256));
+    }
+
+    /**
+     * Looks up a cached value.
+     *
+     * @param key the key
+     * @return the value or <code>null</code> if not cached
+     */
+    V get(K key)
+    {
+        Entry<V> entry = map.get(key);
+        if (entry == null)
+        {
+            return null;
+        }
+        entry.touch(clock.get());
+        return entry.value;
+    }
+
+    /**
+     * Looks up a cached value, computing and caching it if it is
+     * missing.  The value is computed without holding any lock, so
+     * concurrent callers may compute it more than once, but all of
+     * them get the instance that made it into the cache.
+     *
+     * @param key the key
+     * @param loader computes the value for a missing key
+     * @return the cached or computed value
+     */
+    V get(K key, Function<? super K, ? extends V> loader)
+    {
+        V value = get(key);
+        if (value == null)
+        {
+            value = loader.apply(key);
+            if (value != null && maxSize > 0)
+            {
+                Entry<V> existing = map.putIfAbsent(key, new Entry<V>(value, clock.incrementAndGet()));
+                if (existing != null)
+                {
+                    value = existing.value;
+                }
+                else if (map.size() > maxSize)
+                {
+                    evict();
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Looks up a cached value, computing and caching it if it is
+     * missing.  Concurrent callers asking for the same key wait for
+     * the value to be computed once.  No lock is held while computing,
+     * so values for other keys are computed in parallel.
+     *
+     * @param key the key
+     * @param loader computes the value for a missing key
+     * @return the cached or computed value
+     */
+    V computeIfAbsent(K key, Function<? super K, ? extends V> loader)
+    {
+        V value = get(key);
+        if (value == null)
+        {
+            if (maxSize == 0)
+            {
+                return loader.apply(key);
+            }
+            value = loads.load(key, () ->
+            {
+                V cached = get(key);
+                if (cached == null)
+                {
+                    cached = loader.apply(key);
+                    if (cached != null)
+                    {
+                        putIfAbsent(key, cached);
+                    }
+                }
+                return cached;
+            });
+        }
+        return value;
+    }
+
+    /**
+     * Adds a value unless the key is already cached.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    void putIfAbsent(K key, V value)
+    {
+        if (maxSize > 0 && map.putIfAbsent(key, new Entry<V>(value, clock.incrementAndGet())) == null
+            && map.size() > maxSize)
+        {
+            evict();
+        }
+    }
+
+    /**
+     * Replaces a cached value.  Readers see either the old or the new
+     * value.
+     *
+     * @param key the key
+     * @param value the new value
+     */
+    void put(K key, V value)
+    {
+        if (maxSize > 0)
+        {
+            map.put(key, new Entry<V>(value, clock.incrementAndGet()));
+            if (map.size() > maxSize)
+            {
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Removes a cached value.
+     *
+     * @param key the key
+     */
+    void remove(K key)
+    {
+        map.remove(key);
+    }
+
+    /**
+     * @param key the key
+     * @return whether the key is cached
+     */
+    boolean containsKey(K key)
+    {
+        return map.containsKey(key);
+    }
+
+    /**
+     * @return a snapshot of the keys currently cached
+     */
+    List<K> keys()
+    {
+        return new ArrayList<K>(map.keySet());
+    }
+
+    /**
+     * @return a snapshot of the values currently cached
+     */
+    List<V> values()
+    {
+        List<V> values = new ArrayList<V>(map.size());
+        for (Entry<V> entry : map.values())
+        {
+            values.add(entry.value);
+        }
+        return values;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear()
+    {
+        map.clear();
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    int size()
+    {
+        return map.size();
+    }
+
+    /**
+     * @return the maximum number of cached entries
+     */
+    int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Drops the least recently used entries until the cache is down
+     * to three quarters of its capacity.  Only one thread evicts at a
+     * time; others continue without waiting.
+     */
+    private void evict()
+    {
+        if (!evictionLock.tryLock())
+        {
+            return;
+        }
+        try
+        {
+            int excess = map.size() - (maxSize - maxSize / 4);
+            if (excess <= 0)
+            {
+                return;
+            }
+            List<Map.Entry<K, Entry<V>>> entries =
+                new ArrayList<Map.Entry<K, Entry<V>>>(map.entrySet());
+            entries.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            for (int i = 0; i < excess && i < entries.size(); i++)
+            {
+                Map.Entry<K, Entry<V>> entry = entries.get(i);
+                map.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * A cached value with the time it was last used.
+     *
+     * @param <V> the value type
+     */
+    private static final class Entry<V>
+    {
+        /** The cached value. */
+        final V value;
+
+        /** The clock value when the entry was last used. */
+        volatile long lastAccess;
+
+        Entry(V value, long lastAccess)
+        {
+            this.value = value;
+            this.lastAccess = lastAccess;
+        }
+
+        /**
+         * Marks the entry as used.
+         *
+         * @param now the current clock value
+         */
+        void touch(long now)
+        {
+            if (lastAccess != now)
+            {
+                lastAccess = now;
+            }
+        }
+    }
+}
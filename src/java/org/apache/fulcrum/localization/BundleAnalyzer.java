@@ -0,0 +1,674 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.LocaleUtils;
+
+/**
+ * Compares the keys of resource bundles across locales, to find the
+ * texts which are not translated yet before a release.  For each locale
+ * the keys the bundle defines for it are compared with the keys of the
+ * fallback locale, which is usually the default locale of the service:
+ *
+ * <ul>
+ * <li><em>missing</em> keys are defined for the fallback locale but not
+ * for the locale, so they are shown in the fallback language,</li>
+ * <li><em>extra</em> keys are defined for the locale but not for the
+ * fallback locale, so they are probably obsolete,</li>
+ * <li><em>identical</em> keys have the same text as in the fallback
+ * locale, so they are probably copied but not translated,</li>
+ * <li><em>placeholder mismatches</em> are texts using other
+ * <code>MessageFormat</code> arguments than the fallback text.</li>
+ * </ul>
+ *
+ * <p>
+ * The levels of a bundle are loaded once each, and the locales are
+ * analyzed in parallel in a fork-join pool.  Run it as part of the
+ * build or the release:
+ * </p>
+ *
+ * <pre>
+ * java -cp ... org.apache.fulcrum.localization.BundleAnalyzer \
+ *     &lt;fallback locale&gt; &lt;locale&gt;[,&lt;locale&gt;...] &lt;bundle name&gt;...
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class BundleAnalyzer
+{
+    /** Loads single bundles from properties files and classes. */
+    private static final ResourceBundle.Control CONTROL =
+        ResourceBundle.Control.getControl(ResourceBundle.Control.FORMAT_DEFAULT);
+
+    /** The texts of a level for which there is no bundle. */
+    private static final Map<String, Object> NO_TEXTS = Collections.emptyMap();
+
+    /** The class loader to load the bundles with. */
+    private final ClassLoader loader;
+
+    /** The pool to analyze the locales in. */
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an analyzer running in the common fork-join pool.
+     *
+     * @param loader The class loader to load the bundles with.
+     */
+    public BundleAnalyzer(ClassLoader loader)
+    {
+        this(loader, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param loader The class loader to load the bundles with.
+     * @param pool The pool to analyze the locales in.
+     */
+    public BundleAnalyzer(ClassLoader loader, ForkJoinPool pool)
+    {
+        this.loader = loader;
+        this.pool = pool;
+    }
+
+    /**
+     * Analyzes bundles, e.g. the bundles of
+     * {@link SimpleLocalizationService#getBundleNames()} against its
+     * {@link SimpleLocalizationService#getDefaultLocale()}.
+     *
+     * @param bundleNames The names of the bundles.
+     * @param fallback The locale to compare with.
+     * @param locales The locales to analyze.
+     * @return The reports, one per bundle in the order of the names.
+     * @throws IOException if a bundle cannot be read
+     * @throws MissingResourceException if a bundle does not exist for
+     * the fallback locale
+     */
+    public List<Report> analyze(String[] bundleNames, Locale fallback, Collection<Locale> locales)
+        throws IOException
+    {
+        List<ForkJoinTask<Report>> tasks = new ArrayList<ForkJoinTask<Report>>(bundleNames.length);
+        for (String bundleName : bundleNames)
+        {
+            tasks.add(pool.submit(new BundleTask(bundleName, fallback, locales)));
+        }
+        List<Report> reports = new ArrayList<Report>(tasks.size());
+        try
+        {
+            for (ForkJoinTask<Report> task : tasks)
+            {
+                reports.add(task.join());
+            }
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+        return reports;
+    }
+
+    /**
+     * Analyzes a bundle.
+     *
+     * @param bundleName The name of the bundle.
+     * @param fallback The locale to compare with.
+     * @param locales The locales to analyze.
+     * @return The report.
+     * @throws IOException if the bundle cannot be read
+     * @throws MissingResourceException if the bundle does not exist for
+     * the fallback locale
+     */
+    public Report analyze(String bundleName, Locale fallback, Collection<Locale> locales)
+        throws IOException
+    {
+        return analyze(new String[] { bundleName }, fallback, locales).get(0);
+    }
+
+    /**
+     * Determines the arguments a <code>MessageFormat</code> pattern
+     * uses, skipping quoted text.
+     *
+     * @param pattern The pattern.
+     * @return The argument indexes, or names in ICU patterns.
+     */
+    static Set<String> getArguments(String pattern)
+    {
+        if (pattern.indexOf('{') < 0)
+        {
+            return Collections.emptySet();
+        }
+        Set<String> arguments = new TreeSet<String>();
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++)
+        {
+            char c = pattern.charAt(i);
+            if (c == '\'')
+            {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'')
+                {
+                    i++;
+                }
+                else
+                {
+                    quoted = !quoted;
+                }
+            }
+            else if (c == '{' && !quoted)
+            {
+                int end = i + 1;
+                while (end < pattern.length() && Character.isJavaIdentifierPart(pattern.charAt(end)))
+                {
+                    end++;
+                }
+                if (end > i + 1 && end < pattern.length()
+                    && (pattern.charAt(end) == ',' || pattern.charAt(end) == '}'))
+                {
+                    arguments.add(pattern.substring(i + 1, end));
+                }
+            }
+        }
+        return arguments;
+    }
+
+    /**
+     * Analyzes one bundle: loads the texts of the fallback locale, then
+     * forks a task for each locale.
+     */
+    private final class BundleTask extends RecursiveTask<Report>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String bundleName;
+
+        private final Locale fallback;
+
+        private final Collection<Locale> locales;
+
+        /** The texts of the levels loaded and still needed. */
+        private final Map<Locale, Map<String, Object>> levels =
+            new ConcurrentHashMap<Locale, Map<String, Object>>();
+
+        /** The number of tasks still needing each level. */
+        private final Map<Locale, AtomicInteger> uses = new HashMap<Locale, AtomicInteger>();
+
+        BundleTask(String bundleName, Locale fallback, Collection<Locale> locales)
+        {
+            this.bundleName = bundleName;
+            this.fallback = fallback;
+            this.locales = locales;
+        }
+
+        @Override
+        protected Report compute()
+        {
+            // count the uses of the levels first, so each is dropped
+            // when the last task needing it is done
+            List<Locale> fallbackLevels = CONTROL.getCandidateLocales(bundleName, fallback);
+            addUses(fallbackLevels);
+            List<List<Locale>> localeLevels = new ArrayList<List<Locale>>(locales.size());
+            for (Locale locale : locales)
+            {
+                List<Locale> candidates = new ArrayList<Locale>(CONTROL.getCandidateLocales(bundleName, locale));
+                // the root level is shared by all locales
+                candidates.remove(Locale.ROOT);
+                addUses(candidates);
+                localeLevels.add(candidates);
+            }
+
+            Map<String, Object> reference = new HashMap<String, Object>();
+            for (Locale level : fallbackLevels)
+            {
+                for (Map.Entry<String, Object> text : getTexts(level).entrySet())
+                {
+                    reference.putIfAbsent(text.getKey(), text.getValue());
+                }
+                release(level);
+            }
+            if (reference.isEmpty())
+            {
+                throw new MissingResourceException("No texts in bundle " + bundleName
+                    + " for " + fallback, bundleName, "");
+            }
+
+            // parsed once instead of once per locale
+            Map<String, Set<String>> arguments = new HashMap<String, Set<String>>(reference.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Object> text : reference.entrySet())
+            {
+                if (text.getValue() instanceof String)
+                {
+                    arguments.put(text.getKey(), getArguments((String) text.getValue()));
+                }
+            }
+
+            Set<Locale> shared = new HashSet<Locale>(fallbackLevels);
+            List<LocaleTask> tasks = new ArrayList<LocaleTask>(locales.size());
+            int i = 0;
+            for (Locale locale : locales)
+            {
+                tasks.add(new LocaleTask(this, locale, localeLevels.get(i++), reference, arguments, shared));
+            }
+            invokeAll(tasks);
+            List<LocaleReport> reports = new ArrayList<LocaleReport>(tasks.size());
+            for (LocaleTask task : tasks)
+            {
+                reports.add(task.join());
+            }
+            return new Report(bundleName, fallback, reports);
+        }
+
+        private void addUses(List<Locale> candidates)
+        {
+            for (Locale level : candidates)
+            {
+                uses.computeIfAbsent(level, l -> new AtomicInteger()).incrementAndGet();
+            }
+        }
+
+        /**
+         * Drops the texts of a level once no task needs them anymore,
+         * so they can be collected while other locales are analyzed.
+         *
+         * @param level The locale.
+         */
+        void release(Locale level)
+        {
+            if (uses.get(level).decrementAndGet() == 0)
+            {
+                levels.remove(level);
+            }
+        }
+
+        /**
+         * Loads the texts the bundle defines for exactly one locale,
+         * once per locale.
+         *
+         * @param level The locale.
+         * @return The texts, empty if there is no bundle for the locale.
+         */
+        Map<String, Object> getTexts(Locale level)
+        {
+            Map<String, Object> texts = levels.get(level);
+            if (texts == null)
+            {
+                texts = loadTexts(level);
+                Map<String, Object> other = levels.putIfAbsent(level, texts);
+                if (other != null)
+                {
+                    texts = other;
+                }
+            }
+            return texts;
+        }
+
+        private Map<String, Object> loadTexts(Locale level)
+        {
+            try
+            {
+                ResourceBundle rb = CatalogCompiler.loadLevel(bundleName, level, loader);
+                if (rb == null)
+                {
+                    return NO_TEXTS;
+                }
+                Set<String> keys = rb.keySet();
+                Map<String, Object> texts = new HashMap<String, Object>(keys.size() * 4 / 3 + 1);
+                for (String key : keys)
+                {
+                    texts.put(key, rb.getObject(key));
+                }
+                return texts;
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Compares the texts of one locale with the texts of the fallback
+     * locale.
+     */
+    private static final class LocaleTask extends RecursiveTask<LocaleReport>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final BundleTask bundle;
+
+        private final Locale locale;
+
+        /** The levels of the locale except the root level. */
+        private final List<Locale> levels;
+
+        private final Map<String, Object> reference;
+
+        /** The arguments of the texts of the fallback locale. */
+        private final Map<String, Set<String>> arguments;
+
+        /** The levels shared with the fallback locale. */
+        private final Set<Locale> shared;
+
+        LocaleTask(BundleTask bundle, Locale locale, List<Locale> levels, Map<String, Object> reference,
+            Map<String, Set<String>> arguments, Set<Locale> shared)
+        {
+            this.bundle = bundle;
+            this.locale = locale;
+            this.levels = levels;
+            this.reference = reference;
+            this.arguments = arguments;
+            this.shared = shared;
+        }
+
+        @Override
+        protected LocaleReport compute()
+        {
+            List<Map<String, Object>> levelTexts = new ArrayList<Map<String, Object>>(levels.size());
+            boolean available = false;
+            for (Locale level : levels)
+            {
+                Map<String, Object> texts = bundle.getTexts(level);
+                bundle.release(level);
+                available |= !texts.isEmpty();
+                levelTexts.add(texts);
+            }
+
+            SortedSet<String> missing = new TreeSet<String>();
+            SortedSet<String> identical = new TreeSet<String>();
+            SortedSet<String> mismatches = new TreeSet<String>();
+            for (Map.Entry<String, Object> text : reference.entrySet())
+            {
+                // the most specific level defining a key wins
+                String key = text.getKey();
+                Object value = null;
+                int i = 0;
+                while (value == null && i < levelTexts.size())
+                {
+                    value = levelTexts.get(i++).get(key);
+                }
+                if (value == null)
+                {
+                    missing.add(key);
+                }
+                else if (!shared.contains(levels.get(i - 1)))
+                {
+                    Object fallbackValue = text.getValue();
+                    if (value.equals(fallbackValue))
+                    {
+                        identical.add(key);
+                    }
+                    else if (value instanceof String && fallbackValue instanceof String
+                        && !getArguments((String) value).equals(arguments.get(key)))
+                    {
+                        mismatches.add(key);
+                    }
+                }
+            }
+            SortedSet<String> extra = new TreeSet<String>();
+            for (int i = 0; i < levels.size(); i++)
+            {
+                if (!shared.contains(levels.get(i)))
+                {
+                    for (String key : levelTexts.get(i).keySet())
+                    {
+                        if (!reference.containsKey(key))
+                        {
+                            extra.add(key);
+                        }
+                    }
+                }
+            }
+            return new LocaleReport(locale, available, missing, extra, identical, mismatches);
+        }
+    }
+
+    /**
+     * The result of analyzing one bundle.
+     */
+    public static final class Report
+    {
+        private final String bundleName;
+
+        private final Locale fallback;
+
+        private final List<LocaleReport> locales;
+
+        Report(String bundleName, Locale fallback, List<LocaleReport> locales)
+        {
+            this.bundleName = bundleName;
+            this.fallback = fallback;
+            this.locales = Collections.unmodifiableList(locales);
+        }
+
+        /**
+         * @return The name of the bundle.
+         */
+        public String getBundleName()
+        {
+            return bundleName;
+        }
+
+        /**
+         * @return The locale the bundle is compared with.
+         */
+        public Locale getFallback()
+        {
+            return fallback;
+        }
+
+        /**
+         * @return The results per locale, in the order of the locales
+         * analyzed.
+         */
+        public List<LocaleReport> getLocales()
+        {
+            return locales;
+        }
+
+        /**
+         * @return Whether no locale has missing keys or placeholder
+         * mismatches.
+         */
+        public boolean isComplete()
+        {
+            for (LocaleReport locale : locales)
+            {
+                if (!locale.isComplete())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The result of analyzing one bundle for one locale.  The keys are
+     * sorted.
+     */
+    public static final class LocaleReport
+    {
+        private final Locale locale;
+
+        private final boolean available;
+
+        private final SortedSet<String> missing;
+
+        private final SortedSet<String> extra;
+
+        private final SortedSet<String> identical;
+
+        private final SortedSet<String> placeholderMismatches;
+
+        LocaleReport(Locale locale, boolean available, SortedSet<String> missing,
+            SortedSet<String> extra, SortedSet<String> identical, SortedSet<String> placeholderMismatches)
+        {
+            this.locale = locale;
+            this.available = available;
+            this.missing = Collections.unmodifiableSortedSet(missing);
+            this.extra = Collections.unmodifiableSortedSet(extra);
+            this.identical = Collections.unmodifiableSortedSet(identical);
+            this.placeholderMismatches = Collections.unmodifiableSortedSet(placeholderMismatches);
+        }
+
+        /**
+         * @return The locale.
+         */
+        public Locale getLocale()
+        {
+            return locale;
+        }
+
+        /**
+         * @return Whether the bundle defines any texts for the locale
+         * or its parents other than the root locale.
+         */
+        public boolean isAvailable()
+        {
+            return available;
+        }
+
+        /**
+         * @return The keys defined for the fallback locale only.
+         */
+        public SortedSet<String> getMissing()
+        {
+            return missing;
+        }
+
+        /**
+         * @return The keys defined for this locale only.
+         */
+        public SortedSet<String> getExtra()
+        {
+            return extra;
+        }
+
+        /**
+         * @return The keys with the same text as for the fallback locale.
+         */
+        public SortedSet<String> getIdentical()
+        {
+            return identical;
+        }
+
+        /**
+         * @return The keys using other arguments than for the fallback
+         * locale.
+         */
+        public SortedSet<String> getPlaceholderMismatches()
+        {
+            return placeholderMismatches;
+        }
+
+        /**
+         * @return Whether there are no missing keys and no placeholder
+         * mismatches.
+         */
+        public boolean isComplete()
+        {
+            return missing.isEmpty() && placeholderMismatches.isEmpty();
+        }
+    }
+
+    /**
+     * Analyzes bundles from the command line and prints the results.
+     * Exits with status 2 if keys are missing or placeholders do not
+     * match, so a build can fail on it.
+     *
+     * @param args The fallback locale, a comma separated list of
+     * locales and the names of the bundles.
+     * @throws IOException if a bundle cannot be read
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 3)
+        {
+            System.err.println("Usage: BundleAnalyzer <fallback locale>"
+                + " <locale>[,<locale>...] <bundle name>...");
+            System.exit(1);
+        }
+        Locale fallback = LocaleUtils.toLocale(args[0].trim());
+        List<Locale> locales = new ArrayList<Locale>();
+        for (String locale : args[1].split(","))
+        {
+            locales.add(LocaleUtils.toLocale(locale.trim()));
+        }
+        String[] bundleNames = new String[args.length - 2];
+        System.arraycopy(args, 2, bundleNames, 0, bundleNames.length);
+
+        BundleAnalyzer analyzer = new BundleAnalyzer(Thread.currentThread().getContextClassLoader());
+        boolean complete = true;
+        for (Report report : analyzer.analyze(bundleNames, fallback, locales))
+        {
+            System.out.println(report.getBundleName() + " (fallback " + report.getFallback() + ")");
+            for (LocaleReport locale : report.getLocales())
+            {
+                System.out.println("  " + locale.getLocale() + (locale.isAvailable() ? "" : " (not available)")
+                    + ": " + locale.getMissing().size() + " missing, "
+                    + locale.getExtra().size() + " extra, "
+                    + locale.getIdentical().size() + " identical, "
+                    + locale.getPlaceholderMismatches().size() + " placeholder mismatches");
+                print("missing", locale.getMissing());
+                print("extra", locale.getExtra());
+                print("identical", locale.getIdentical());
+                print("placeholders", locale.getPlaceholderMismatches());
+            }
+            complete &= report.isComplete();
+        }
+        if (!complete)
+        {
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Prints the keys of one kind.
+     *
+     * @param kind The kind of the keys.
+     * @param keys The keys.
+     */
+    private static void print(String kind, Set<String> keys)
+    {
+        for (String key : keys)
+        {
+            System.out.println("    " + kind + ": " + key);
+        }
+    }
+}
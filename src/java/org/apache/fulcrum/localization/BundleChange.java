@@ -0,0 +1,100 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Locale;
+
+/**
+ * A text added, changed or removed in a {@link BundleSource}.
+ *
+ * @version $Id$
+ */
+public final class BundleChange
+{
+    /** The name of the bundle. */
+    private final String bundleName;
+
+    /** The locale of the text. */
+    private final Locale locale;
+
+    /** The key of the text. */
+    private final String key;
+
+    /** The new text, or <code>null</code> if it was removed. */
+    private final String value;
+
+    /**
+     * Creates a change.
+     *
+     * @param bundleName The name of the bundle.
+     * @param locale The locale of the text.
+     * @param key The key of the text.
+     * @param value The new text, or <code>null</code> if it was
+     * removed.
+     */
+    public BundleChange(String bundleName, Locale locale, String key, String value)
+    {
+        this.bundleName = bundleName;
+        this.locale = locale;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * @return The name of the bundle.
+     */
+    public String getBundleName()
+    {
+        return bundleName;
+    }
+
+    /**
+     * @return The locale of the text.
+     */
+    public Locale getLocale()
+    {
+        return locale;
+    }
+
+    /**
+     * @return The key of the text.
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @return The new text, or <code>null</code> if it was removed.
+     */
+    public String getValue()
+    {
+        return value;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return bundleName + '_' + locale + '/' + key + '=' + value;
+    }
+}
@@ -0,0 +1,138 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects changes of the <code>.properties</code> files backing the
+ * cached bundles by comparing their modification times between calls.
+ * Bundles which are not backed by a file (such as
+ * <code>ListResourceBundle</code> classes) never change.
+ *
+ * @version $Id$
+ */
+final class BundleChangeDetector
+{
+    /** Maps bundle names to resources. */
+    private static final ResourceBundle.Control CONTROL =
+        ResourceBundle.Control.getControl(ResourceBundle.Control.FORMAT_PROPERTIES);
+
+    /** The class loader the bundles are loaded from. */
+    private final ClassLoader classLoader;
+
+    /**
+     * The modification times seen last, keyed by resource name, with
+     * <code>-1</code> for resources which did not exist.
+     */
+    private final Map<String, Long> modified = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Creates a new detector.
+     *
+     * @param classLoader the class loader the bundles are loaded from
+     */
+    BundleChangeDetector(ClassLoader classLoader)
+    {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Checks whether any of the files a bundle may be loaded from for
+     * the given locales has been added, removed or modified since the
+     * previous call.  Files seen for the first time, e.g. because a
+     * locale was added to the cache, are only recorded, so changes of
+     * the cached locales alone do not count as changes of the bundle.
+     *
+     * @param bundleName the name of the bundle
+     * @param locales the locales the bundle is used for
+     * @return <code>true</code> if the bundle has changed
+     */
+    boolean hasChanged(String bundleName, Collection<Locale> locales)
+    {
+        Set<String> resources = new LinkedHashSet<String>();
+        for (Locale locale : locales)
+        {
+            for (Locale candidate : CONTROL.getCandidateLocales(bundleName, locale))
+            {
+                resources.add(CONTROL.toResourceName(
+                    CONTROL.toBundleName(bundleName, candidate), "properties"));
+            }
+        }
+
+        boolean changed = false;
+        for (String resource : resources)
+        {
+            URL url = classLoader.getResource(resource);
+            long lastModified = (url == null ? -1 : getLastModified(url));
+            Long previous = modified.put(resource, lastModified);
+            if (previous != null && previous.longValue() != lastModified)
+            {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param url the location of a resource
+     * @return the modification time of the resource, or <code>0</code>
+     * if it is unknown
+     */
+    private static long getLastModified(URL url)
+    {
+        try
+        {
+            if ("file".equals(url.getProtocol()))
+            {
+                return new File(url.toURI()).lastModified();
+            }
+            URLConnection connection = url.openConnection();
+            connection.setUseCaches(false);
+            long lastModified = connection.getLastModified();
+            // release the connection, e.g. the lock on a jar file
+            InputStream in = connection.getInputStream();
+            try
+            {
+                return lastModified;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException | URISyntaxException | IllegalArgumentException e)
+        {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Converts loaded bundles into {@link CompactResourceBundle}s.  All
+ * locales of a bundle name share one key table, whatever order they
+ * are loaded in, and each bundle is converted once, however many
+ * requested locales resolve to it.
+ *
+ * <p>
+ * The bundles to convert should be loaded with {@link #CONTROL}, so
+ * the JDK does not keep the loaded bundles in its own cache next to
+ * the compact copies.
+ * </p>
+ *
+ * @version $Id$
+ */
+final class BundleCompactor
+{
+    /**
+     * Loads bundles like <code>ResourceBundle.getBundle()</code> does
+     * by default, but without caching them in the JDK.  Each level of
+     * a bundle is then loaded once for every locale resolving to it,
+     * which the cache of the service makes rare.
+     */
+    static final ResourceBundle.Control CONTROL = new ResourceBundle.Control()
+    {
+        @Override
+        public long getTimeToLive(String baseName, Locale locale)
+        {
+            return TTL_DONT_CACHE;
+        }
+    };
+
+    /** The key tables keyed by bundle name. */
+    private final ConcurrentMap<String, CompactResourceBundle.KeyTable> keyTables =
+        new ConcurrentHashMap<String, CompactResourceBundle.KeyTable>();
+
+    /** The converted bundles keyed by bundle name and locale. */
+    private final ConcurrentMap<CacheKey, ResourceBundle> compactBundles =
+        new ConcurrentHashMap<CacheKey, ResourceBundle>();
+
+    /**
+     * Converts a bundle, or returns the bundle converted before for
+     * the same bundle name and locale.
+     *
+     * @param bundleName The name of the bundle.
+     * @param bundle The bundle as loaded.
+     * @return The compact bundle.
+     */
+    ResourceBundle compact(String bundleName, ResourceBundle bundle)
+    {
+        if (bundle instanceof CompactResourceBundle)
+        {
+            return bundle;
+        }
+        return compactBundles.computeIfAbsent(
+            new CacheKey(bundleName, bundle.getLocale(), null),
+            k -> new CompactResourceBundle(getKeyTable(bundleName, bundle.keySet()), bundle));
+    }
+
+    /**
+     * Retrieves the key table of a bundle name, appending the keys it
+     * does not contain yet.
+     *
+     * @param bundleName The name of the bundle.
+     * @param keys The keys the table must contain.
+     * @return The key table.
+     */
+    private CompactResourceBundle.KeyTable getKeyTable(String bundleName, Set<String> keys)
+    {
+        CompactResourceBundle.KeyTable table = keyTables.computeIfAbsent(bundleName,
+            name -> new CompactResourceBundle.KeyTable());
+        table.addAll(keys);
+        return table;
+    }
+
+    /**
+     * Forgets the converted bundles, so they are converted again from
+     * freshly loaded bundles.  The key tables are kept.
+     *
+     * @param bundleName The name of the bundle.
+     */
+    void clear(String bundleName)
+    {
+        compactBundles.keySet().removeIf(k -> k.bundleName.equals(bundleName));
+    }
+}
@@ -0,0 +1,91 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A source of texts other than classes and properties files on the
+ * class path, e.g. a database table.  The service loads the texts of
+ * all bundles for a locale at once when the locale is first used, and
+ * keeps them in memory, so lookups never reach the source.
+ *
+ * <p>
+ * Sources which track a version stamp for their texts allow the
+ * service to fetch only the texts changed since the last refresh.
+ * Other sources are reloaded completely for every refresh.
+ * </p>
+ *
+ * <p>
+ * Implementations need a public constructor without arguments to be
+ * configured as the <code>source</code> of the service.  If they
+ * implement <code>Configurable</code>, they are configured with the
+ * <code>source</code> element, and if they implement
+ * <code>Disposable</code>, they are disposed with the service.
+ * </p>
+ *
+ * @version $Id$
+ */
+public interface BundleSource
+{
+    /** The version of a source which does not track versions. */
+    long NO_VERSION = -1;
+
+    /**
+     * Loads the texts of all bundles for exactly one locale, without
+     * the texts of parent locales.
+     *
+     * @param locale The locale.
+     * @return The texts keyed by bundle name and key.  Bundles with no
+     * texts for the locale are left out.
+     * @throws IOException if the source cannot be read
+     */
+    Map<String, Map<String, String>> load(Locale locale) throws IOException;
+
+    /**
+     * Retrieves the current version stamp of the texts, which must
+     * increase with every change.
+     *
+     * @return The version, or {@link #NO_VERSION} if the source does
+     * not track versions.
+     * @throws IOException if the source cannot be read
+     */
+    default long getVersion() throws IOException
+    {
+        return NO_VERSION;
+    }
+
+    /**
+     * Loads the texts changed after a version.  Only called if
+     * {@link #getVersion()} reports versions.
+     *
+     * @param version The version of the texts loaded before.
+     * @return The changes.
+     * @throws IOException if the source cannot be read
+     */
+    default List<BundleChange> getChanges(long version) throws IOException
+    {
+        return Collections.emptyList();
+    }
+}
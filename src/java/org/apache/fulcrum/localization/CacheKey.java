@@ -0,0 +1,93 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Immutable composite key of a bundle name, a locale and an optional
+ * resource key, used by the caches of the localization service.
+ *
+ * @version $Id$
+ */
+final class CacheKey
+{
+    /** The name of the bundle. */
+    final String bundleName;
+
+    /** The locale, may be <code>null</code>. */
+    final Locale locale;
+
+    /** The resource key, may be <code>null</code>. */
+    final String key;
+
+    /** The precomputed hash code. */
+    private final int hash;
+
+    /**
+     * Creates a new key.
+     *
+     * @param bundleName the name of the bundle
+     * @param locale the locale
+     * @param key the resource key
+     */
+    CacheKey(String bundleName, Locale locale, String key)
+    {
+        this.bundleName = bundleName;
+        this.locale = locale;
+        this.key = key;
+        int h = (bundleName == null ? 0 : bundleName.hashCode());
+        h = 31 * h + (locale == null ? 0 : locale.hashCode());
+        this.hash = 31 * h + (key == null ? 0 : key.hashCode());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof CacheKey))
+        {
+            return false;
+        }
+        CacheKey that = (CacheKey) o;
+        return hash == that.hash
+            && Objects.equals(bundleName, that.bundleName)
+            && Objects.equals(locale, that.locale)
+            && Objects.equals(key, that.key);
+    }
+
+    @Override
+    public String toString()
+    {
+        return bundleName
+            + (locale == null ? "" : "/" + locale)
+            + (key == null ? "" : "/" + key);
+    }
+}
@@ -0,0 +1,256 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.LocaleUtils;
+
+/**
+ * Compiles resource bundles into catalog files, which the service reads
+ * through memory mapping instead of parsing properties files when a
+ * <code>catalog-directory</code> is configured.  See
+ * {@link MappedResourceBundle} for the file format.
+ *
+ * <p>
+ * Each bundle is compiled for the given locales and all their parent
+ * locales, one file per locale for which the bundle exists.  Run it as
+ * part of the build:
+ * </p>
+ *
+ * <pre>
+ * java -cp ... org.apache.fulcrum.localization.CatalogCompiler \
+ *     &lt;output directory&gt; &lt;locale&gt;[,&lt;locale&gt;...] &lt;bundle name&gt;...
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class CatalogCompiler
+{
+    /** The file name extension of catalog files. */
+    public static final String EXTENSION = ".flc";
+
+    /** Loads single bundles from properties files and classes. */
+    private static final ResourceBundle.Control CONTROL =
+        ResourceBundle.Control.getControl(ResourceBundle.Control.FORMAT_DEFAULT);
+
+    /** The directory to write the catalog files to. */
+    private final Path outputDirectory;
+
+    /** The class loader to load the bundles with. */
+    private final ClassLoader loader;
+
+    /**
+     * Creates a compiler.
+     *
+     * @param outputDirectory The directory to write the catalog files
+     * to.
+     * @param loader The class loader to load the bundles with.
+     */
+    public CatalogCompiler(Path outputDirectory, ClassLoader loader)
+    {
+        this.outputDirectory = outputDirectory;
+        this.loader = loader;
+    }
+
+    /**
+     * Compiles a bundle for some locales and their parent locales.
+     *
+     * @param bundleName The name of the bundle.
+     * @param locales The locales.
+     * @return The catalog files written.
+     * @throws IOException if a bundle cannot be read or a file cannot
+     * be written
+     */
+    public List<Path> compile(String bundleName, Collection<Locale> locales) throws IOException
+    {
+        Set<Locale> levels = new LinkedHashSet<Locale>();
+        for (Locale locale : locales)
+        {
+            levels.addAll(CONTROL.getCandidateLocales(bundleName, locale));
+        }
+        levels.add(Locale.ROOT);
+
+        Files.createDirectories(outputDirectory);
+        List<Path> files = new ArrayList<Path>();
+        for (Locale level : levels)
+        {
+            ResourceBundle rb = loadLevel(bundleName, level, loader);
+            if (rb != null)
+            {
+                Path file = getCatalogFile(outputDirectory, bundleName, level);
+                write(rb, file);
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Loads a bundle for exactly one locale, without parents, so it
+     * holds only the texts defined for that locale.
+     *
+     * @param bundleName The name of the bundle.
+     * @param locale The locale.
+     * @param loader The class loader to load the bundle with.
+     * @return The bundle, or <code>null</code> if there is none for
+     * the locale.
+     * @throws IOException if the bundle cannot be read
+     */
+    static ResourceBundle loadLevel(String bundleName, Locale locale, ClassLoader loader) throws IOException
+    {
+        for (String format : CONTROL.getFormats(bundleName))
+        {
+            try
+            {
+                ResourceBundle rb = CONTROL.newBundle(bundleName, locale, format, loader, true);
+                if (rb != null)
+                {
+                    return rb;
+                }
+            }
+            catch (ReflectiveOperationException e)
+            {
+                throw new IOException("Cannot load bundle " + bundleName + " for " + locale, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the texts of a bundle to a catalog file.  The file is
+     * written under a temporary name first and then moved into place,
+     * so a mapped file is never changed.
+     *
+     * @param rb The bundle.
+     * @param file The catalog file.
+     * @throws IOException if the file cannot be written
+     */
+    static void write(ResourceBundle rb, Path file) throws IOException
+    {
+        // Sort by the UTF-8 bytes, which is what lookups search by.
+        Map<byte[], byte[]> texts = new TreeMap<byte[], byte[]>(Arrays::compareUnsigned);
+        for (String key : rb.keySet())
+        {
+            Object value = rb.getObject(key);
+            if (value instanceof String)
+            {
+                texts.put(key.getBytes(StandardCharsets.UTF_8),
+                    ((String) value).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeInt(MappedResourceBundle.MAGIC);
+            out.writeInt(texts.size());
+            int offset = MappedResourceBundle.HEADER_SIZE
+                + texts.size() * MappedResourceBundle.ENTRY_SIZE;
+            for (Map.Entry<byte[], byte[]> entry : texts.entrySet())
+            {
+                out.writeInt(offset);
+                out.writeInt(entry.getKey().length);
+                offset += entry.getKey().length;
+                out.writeInt(offset);
+                out.writeInt(entry.getValue().length);
+                offset += entry.getValue().length;
+            }
+            for (Map.Entry<byte[], byte[]> entry : texts.entrySet())
+            {
+                out.write(entry.getKey());
+                out.write(entry.getValue());
+            }
+        }
+
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try
+        {
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Determines the name of a catalog file.
+     *
+     * @param directory The directory of the catalog files.
+     * @param bundleName The name of the bundle.
+     * @param locale The locale.
+     * @return The catalog file, e.g.
+     * <code>org.example.Messages_de_DE.flc</code>.
+     */
+    static Path getCatalogFile(Path directory, String bundleName, Locale locale)
+    {
+        return directory.resolve(CONTROL.toBundleName(bundleName, locale) + EXTENSION);
+    }
+
+    /**
+     * Compiles bundles from the command line.
+     *
+     * @param args The output directory, a comma separated list of
+     * locales and the names of the bundles.
+     * @throws IOException if a bundle cannot be compiled
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 3)
+        {
+            System.err.println("Usage: CatalogCompiler <output directory>"
+                + " <locale>[,<locale>...] <bundle name>...");
+            System.exit(1);
+        }
+        List<Locale> locales = new ArrayList<Locale>();
+        for (String locale : args[1].split(","))
+        {
+            locales.add(LocaleUtils.toLocale(locale.trim()));
+        }
+        CatalogCompiler compiler = new CatalogCompiler(Paths.get(args[0]),
+            Thread.currentThread().getContextClassLoader());
+        for (int i = 2; i < args.length; i++)
+        {
+            for (Path file : compiler.compile(args[i], locales))
+            {
+                System.out.println("Wrote " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Loads bundles from the catalog files in a directory, falling back
+ * to classes and properties files for bundles which have not been
+ * compiled.
+ *
+ * @version $Id$
+ */
+final class CatalogControl extends ResourceBundle.Control
+{
+    /** The format of compiled catalogs. */
+    static final String FORMAT_CATALOG = "fulcrum.catalog";
+
+    /** The formats in order of preference. */
+    private static final List<String> FORMATS;
+
+    static
+    {
+        List<String> formats = new ArrayList<String>();
+        formats.add(FORMAT_CATALOG);
+        formats.addAll(FORMAT_DEFAULT);
+        FORMATS = Collections.unmodifiableList(formats);
+    }
+
+    /** The directory of the catalog files. */
+    private final Path directory;
+
+    /**
+     * Creates a control.
+     *
+     * @param directory The directory of the catalog files.
+     */
+    CatalogControl(Path directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @see java.util.ResourceBundle.Control#getFormats(java.lang.String)
+     */
+    @Override
+    public List<String> getFormats(String baseName)
+    {
+        return FORMATS;
+    }
+
+    /**
+     * @see java.util.ResourceBundle.Control#newBundle(java.lang.String, java.util.Locale, java.lang.String, java.lang.ClassLoader, boolean)
+     */
+    @Override
+    public ResourceBundle newBundle(String baseName, Locale locale, String format,
+        ClassLoader loader, boolean reload)
+        throws IllegalAccessException, InstantiationException, IOException
+    {
+        if (FORMAT_CATALOG.equals(format))
+        {
+            Path file = CatalogCompiler.getCatalogFile(directory, baseName, locale);
+            return (Files.isRegularFile(file) ? MappedResourceBundle.open(file) : null);
+        }
+        return super.newBundle(baseName, locale, format, loader, reload);
+    }
+}
@@ -0,0 +1,372 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+/**
+ * An immutable resource bundle holding the resources of a bundle and
+ * all its parents in a single array.  The array is indexed by the
+ * ordinal of the key in a {@link KeyTable} which is shared by all
+ * locales of the same bundle name, so each key string is stored once
+ * per bundle name rather than once per locale and the per-entry
+ * overhead of a hash map disappears.
+ *
+ * <p>
+ * Since the parent chain is flattened into the values, the bundle has
+ * no parent and a lookup takes a single probe of the key table.
+ * </p>
+ *
+ * @version $Id$
+ */
+final class CompactResourceBundle extends ResourceBundle
+{
+    /** The keys shared with the other locales of the bundle. */
+    private final KeyTable keys;
+
+    /** The resources indexed by key ordinal, <code>null</code> if absent. */
+    private final Object[] values;
+
+    /** The locale of the bundle this one was built from. */
+    private final Locale locale;
+
+    /** The number of resources present. */
+    private final int size;
+
+    /** The keys present, created on first use. */
+    private Set<String> keySet;
+
+    /**
+     * Copies a resource bundle, including the resources inherited
+     * from its parents.
+     *
+     * @param keys The key table, which must contain all keys of the
+     * bundle.  Keys added to it later are absent from this bundle.
+     * @param bundle The bundle to copy.
+     */
+    CompactResourceBundle(KeyTable keys, ResourceBundle bundle)
+    {
+        this.keys = keys;
+        this.values = new Object[keys.size()];
+        this.locale = bundle.getLocale();
+        int count = 0;
+        for (String key : bundle.keySet())
+        {
+            values[keys.ordinal(key)] = bundle.getObject(key);
+            count++;
+        }
+        this.size = count;
+    }
+
+    /**
+     * @return The key table shared with the other locales of the
+     * bundle.
+     */
+    KeyTable getKeyTable()
+    {
+        return keys;
+    }
+
+    /**
+     * @see java.util.ResourceBundle#getLocale()
+     */
+    @Override
+    public Locale getLocale()
+    {
+        return locale;
+    }
+
+    /**
+     * @see java.util.ResourceBundle#handleGetObject(java.lang.String)
+     */
+    @Override
+    protected Object handleGetObject(String key)
+    {
+        int ordinal = keys.ordinal(key);
+        return (ordinal < 0 || ordinal >= values.length ? null : values[ordinal]);
+    }
+
+    /**
+     * @see java.util.ResourceBundle#containsKey(java.lang.String)
+     */
+    @Override
+    public boolean containsKey(String key)
+    {
+        if (key == null)
+        {
+            throw new NullPointerException();
+        }
+        return handleGetObject(key) != null;
+    }
+
+    /**
+     * @see java.util.ResourceBundle#getKeys()
+     */
+    @Override
+    public Enumeration<String> getKeys()
+    {
+        return Collections.enumeration(handleKeySet());
+    }
+
+    /**
+     * @see java.util.ResourceBundle#handleKeySet()
+     */
+    @Override
+    protected Set<String> handleKeySet()
+    {
+        if (keySet == null)
+        {
+            keySet = new KeySet();
+        }
+        return keySet;
+    }
+
+    /**
+     * @see java.util.ResourceBundle#keySet()
+     */
+    @Override
+    public Set<String> keySet()
+    {
+        return handleKeySet();
+    }
+
+    /**
+     * A view of the keys present in this bundle.
+     */
+    private final class KeySet extends AbstractSet<String>
+    {
+        @Override
+        public boolean contains(Object o)
+        {
+            return o instanceof String && handleGetObject((String) o) != null;
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        @Override
+        public Iterator<String> iterator()
+        {
+            return new Iterator<String>()
+            {
+                private int next = advance(0);
+
+                private int advance(int from)
+                {
+                    while (from < values.length && values[from] == null)
+                    {
+                        from++;
+                    }
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext()
+                {
+                    return next < values.length;
+                }
+
+                @Override
+                public String next()
+                {
+                    if (next >= values.length)
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    String key = keys.key(next);
+                    next = advance(next + 1);
+                    return key;
+                }
+            };
+        }
+    }
+
+    /**
+     * A table assigning each key of a bundle name an ordinal.  Keys
+     * are only ever appended, so an ordinal never changes and bundles
+     * built before keys were added keep using the same table; their
+     * value arrays are just shorter than the table.  Keys are found
+     * by open addressing with linear probing, using the hash code
+     * cached in the key strings.
+     */
+    static final class KeyTable
+    {
+        /** The current keys and slots, replaced when keys are added. */
+        private volatile Slots current;
+
+        /**
+         * Creates an empty key table.
+         */
+        KeyTable()
+        {
+            this.current = new Slots(new String[0]);
+        }
+
+        /**
+         * @param key The key.
+         * @return The ordinal of the key, or <code>-1</code> if it is
+         * not in the table.
+         */
+        int ordinal(String key)
+        {
+            return current.ordinal(key);
+        }
+
+        /**
+         * @param ordinal The ordinal.
+         * @return The key with the ordinal.
+         */
+        String key(int ordinal)
+        {
+            return current.keys[ordinal];
+        }
+
+        /**
+         * @return The number of keys.
+         */
+        int size()
+        {
+            return current.keys.length;
+        }
+
+        /**
+         * Appends the keys the table does not contain yet.  Readers
+         * see either the old or the new keys.
+         *
+         * @param other The keys to add.
+         */
+        void addAll(Collection<String> other)
+        {
+            Slots slots = current;
+            if (slots.containsAll(other))
+            {
+                return;
+            }
+            synchronized (this)
+            {
+                slots = current;
+                Set<String> union = new LinkedHashSet<String>(slots.keys.length + other.size());
+                Collections.addAll(union, slots.keys);
+                union.addAll(other);
+                if (union.size() > slots.keys.length)
+                {
+                    current = new Slots(union.toArray(new String[0]));
+                }
+            }
+        }
+    }
+
+    /**
+     * An immutable snapshot of the keys of a {@link KeyTable} and the
+     * hash slots to find them.
+     */
+    private static final class Slots
+    {
+        /** The keys in ordinal order. */
+        final String[] keys;
+
+        /** The ordinal plus one of the key hashed to a slot, or 0. */
+        private final int[] slots;
+
+        /**
+         * Creates the hash slots of keys.
+         *
+         * @param keys The keys, without duplicates.
+         */
+        Slots(String[] keys)
+        {
+            this.keys = keys;
+            int capacity = Integer.highestOneBit(Math.max(2, keys.length * 2 - 1)) << 1;
+            this.slots = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < keys.length; i++)
+            {
+                int slot = spread(keys[i].hashCode()) & mask;
+                while (slots[slot] != 0)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = i + 1;
+            }
+        }
+
+        /**
+         * @param key The key.
+         * @return The ordinal of the key, or <code>-1</code> if it is
+         * not in the table.
+         */
+        int ordinal(String key)
+        {
+            int mask = slots.length - 1;
+            int slot = spread(key.hashCode()) & mask;
+            int ordinal;
+            while ((ordinal = slots[slot]) != 0)
+            {
+                String candidate = keys[ordinal - 1];
+                if (candidate == key || candidate.equals(key))
+                {
+                    return ordinal - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * @param other The keys to check.
+         * @return Whether this table contains all the keys.
+         */
+        boolean containsAll(Collection<String> other)
+        {
+            for (String key : other)
+            {
+                if (ordinal(key) < 0)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Spreads the higher bits of a hash code to the lower ones, as
+         * the table is indexed by the lower bits.
+         *
+         * @param h The hash code.
+         * @return The spread hash code.
+         */
+        private static int spread(int h)
+        {
+            return h ^ (h >>> 16);
+        }
+    }
+}
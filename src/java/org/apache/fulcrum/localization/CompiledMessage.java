@@ -0,0 +1,269 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.Format;
+import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.fulcrum.localization.LocaleFormats.SharedFormat;
+
+/**
+ * A message pattern in <code>MessageFormat</code> syntax, parsed once.
+ *
+ * <p>
+ * Most patterns only use plain placeholders like <code>{0}</code> and
+ * number and date placeholders like <code>{0,number,#.##}</code>.
+ * Those are split into literal text and placeholders up front and
+ * formatted by appending the literals and the arguments directly, the
+ * way <code>MessageFormat</code> would.  Numbers and dates are
+ * formatted by the shared formatters of the locale, so primitive
+ * arguments need not be boxed and no formatter is created or cloned
+ * per call.
+ * </p>
+ *
+ * <p>
+ * Other patterns, e.g. with choice formats, are formatted by the
+ * <code>MessageFormat</code>.  It is not thread-safe, so the parsed
+ * prototype is never used for formatting itself.  Callers borrow a
+ * clone instead, which is handed back after use and reused by the
+ * next caller.  Concurrent callers which find no clone available
+ * create their own.
+ * </p>
+ *
+ * @version $Id$
+ */
+final class CompiledMessage implements MessagePattern
+{
+    /** Delimits the argument indexes when splitting the pattern. */
+    private static final char MARK = '\uFFFF';
+
+    /** The parsed pattern, only ever cloned. */
+    private final MessageFormat prototype;
+
+    /** The formatters of the locale to format for. */
+    private final LocaleFormats formats;
+
+    /**
+     * The literal text before each placeholder and after the last one,
+     * or <code>null</code> if the pattern needs the
+     * <code>MessageFormat</code>.
+     */
+    private final String[] literals;
+
+    /** The argument index of each placeholder. */
+    private final int[] indexes;
+
+    /**
+     * The formatter of each placeholder, or <code>null</code> for plain
+     * placeholders.
+     */
+    private final SharedFormat[] subformats;
+
+    /** A clone of the prototype available for reuse. */
+    private final AtomicReference<MessageFormat> spare =
+        new AtomicReference<MessageFormat>();
+
+    /**
+     * Parses a message pattern.
+     *
+     * @param pattern the <code>MessageFormat</code> pattern
+     * @param formats the formatters of the locale to format for
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    CompiledMessage(String pattern, LocaleFormats formats)
+    {
+        this.prototype = new MessageFormat(pattern, formats.getLocale());
+        this.formats = formats;
+
+        Format[] placeholders = prototype.getFormats();
+        boolean direct = pattern.indexOf(MARK) < 0;
+        for (Format format : placeholders)
+        {
+            direct &= (format == null
+                || format instanceof DecimalFormat
+                || format instanceof SimpleDateFormat);
+        }
+        if (direct)
+        {
+            // let MessageFormat resolve the quoting by formatting
+            // markers in place of all placeholders, then split its
+            // output at the markers
+            MessageFormat marking = (MessageFormat) prototype.clone();
+            marking.setFormats(new Format[placeholders.length]);
+            Object[] markers = new Object[marking.getFormatsByArgumentIndex().length];
+            for (int i = 0; i < markers.length; i++)
+            {
+                markers[i] = MARK + Integer.toString(i) + MARK;
+            }
+            String marked = marking.format(markers);
+            List<String> text = new ArrayList<String>();
+            List<Integer> arguments = new ArrayList<Integer>();
+            int start = 0;
+            for (int mark = marked.indexOf(MARK); mark >= 0; mark = marked.indexOf(MARK, start))
+            {
+                int end = marked.indexOf(MARK, mark + 1);
+                text.add(marked.substring(start, mark));
+                arguments.add(Integer.valueOf(marked.substring(mark + 1, end)));
+                start = end + 1;
+            }
+            text.add(marked.substring(start));
+            this.literals = text.toArray(new String[0]);
+            this.indexes = arguments.stream().mapToInt(Integer::intValue).toArray();
+            // placeholders appear in the output in the order of the pattern
+            this.subformats = new SharedFormat[indexes.length];
+            for (int i = 0; i < indexes.length; i++)
+            {
+                if (placeholders[i] != null)
+                {
+                    subformats[i] = formats.getFormat(placeholders[i]);
+                }
+            }
+        }
+        else
+        {
+            this.literals = null;
+            this.indexes = null;
+            this.subformats = null;
+        }
+    }
+
+    @Override
+    public String format(Object[] args)
+    {
+        if (literals == null)
+        {
+            return formatPattern(args);
+        }
+        StringBuilder result = new StringBuilder(literals.length * 16);
+        try
+        {
+            for (int i = 0; i < indexes.length; i++)
+            {
+                result.append(literals[i]);
+                int index = indexes[i];
+                if (index < args.length)
+                {
+                    appendObject(result, subformats[i], args[index]);
+                }
+                else
+                {
+                    result.append('{').append(index).append('}');
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // a StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        result.append(literals[indexes.length]);
+        return result.toString();
+    }
+
+    /**
+     * Formats the message, appending it to <code>out</code>.  Primitive
+     * arguments are only boxed if the pattern needs the
+     * <code>MessageFormat</code>.
+     */
+    @Override
+    public void formatTo(Appendable out, MessageArguments args) throws IOException
+    {
+        if (literals == null)
+        {
+            out.append(formatPattern(args.toArray()));
+            return;
+        }
+        for (int i = 0; i < indexes.length; i++)
+        {
+            out.append(literals[i]);
+            int index = indexes[i];
+            SharedFormat subformat = subformats[i];
+            if (index >= args.size())
+            {
+                out.append('{').append(Integer.toString(index)).append('}');
+            }
+            else if (args.isLong(index))
+            {
+                (subformat == null ? formats.getNumberFormat() : subformat)
+                    .formatLong(out, args.getLong(index));
+            }
+            else if (args.isDouble(index))
+            {
+                (subformat == null ? formats.getNumberFormat() : subformat)
+                    .formatDouble(out, args.getDouble(index));
+            }
+            else
+            {
+                appendObject(out, subformat, args.getObject(index));
+            }
+        }
+        out.append(literals[indexes.length]);
+    }
+
+    /**
+     * Formats with a clone of the parsed <code>MessageFormat</code>.
+     *
+     * @param args the arguments to use as {0}, {1}, etc.
+     * @return the formatted message
+     */
+    private String formatPattern(Object[] args)
+    {
+        MessageFormat format = spare.getAndSet(null);
+        if (format == null)
+        {
+            format = (MessageFormat) prototype.clone();
+        }
+        try
+        {
+            return format.format(args);
+        }
+        finally
+        {
+            spare.set(format);
+        }
+    }
+
+    /**
+     * Appends an argument like <code>MessageFormat</code> does.
+     *
+     * @param out where to append the argument
+     * @param subformat the formatter of the placeholder, or
+     * <code>null</code> for a plain placeholder
+     * @param arg the argument
+     * @throws IOException if appending fails
+     */
+    private void appendObject(Appendable out, SharedFormat subformat, Object arg) throws IOException
+    {
+        if (subformat == null || arg == null)
+        {
+            formats.appendPlain(out, arg);
+        }
+        else
+        {
+            subformat.format(out, arg);
+        }
+    }
+}
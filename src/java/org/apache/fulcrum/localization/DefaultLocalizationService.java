@@ -19,11 +19,22 @@ package org.apache.fulcrum.localization;
  * under the License.
  */
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
 
+import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
 
+import org.apache.avalon.framework.configuration.Configuration;
+import org.apache.avalon.framework.configuration.ConfigurationException;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -70,12 +81,105 @@ public class DefaultLocalizationService
     extends SimpleLocalizationServiceImpl
     implements LocalizationService
 {
+    /** Attribute holding the maximum number of parsed <code>Accept-Language</code> headers */
+    private static final String HEADER_CACHE_SIZE = "header-cache-size";
+
+    /** The default maximum number of parsed <code>Accept-Language</code> headers */
+    private static final int DEFAULT_HEADER_CACHE_SIZE = 1000;
+
+    /** Attribute enabling locale negotiation against the available bundles */
+    private static final String LOCALE_NEGOTIATION = "locale-negotiation";
+
+    /** Attribute holding the name of the request attribute caching the resolved locale */
+    private static final String REQUEST_ATTRIBUTE = "request-attribute";
+
+    /** The default name of the request attribute caching the resolved locale */
+    private static final String DEFAULT_REQUEST_ATTRIBUTE = "org.apache.fulcrum.localization.RequestLocale";
+
+    /** Attribute holding the name of the session attribute overriding the locale */
+    private static final String LOCALE_SESSION_ATTRIBUTE = "locale-session-attribute";
+
+    /** Attribute holding the name of the cookie overriding the locale */
+    private static final String LOCALE_COOKIE = "locale-cookie";
+
+    /**
+     * Whether locales are negotiated against the available bundles
+     * rather than taken from the header as they are.
+     */
+    private boolean negotiate = false;
+
+    /**
+     * The locales parsed from <code>Accept-Language</code> headers,
+     * keyed by header value.
+     */
+    private BoundedCache<String, Locale> headerLocales;
+
+    /**
+     * The negotiated locales, keyed by bundle name and header value.
+     */
+    private BoundedCache<CacheKey, Locale> negotiatedLocales;
+
+    /**
+     * The name of the request attribute caching the locale and bundles
+     * resolved for a request, or <code>null</code> to resolve them on
+     * every call.
+     */
+    private String requestAttribute = DEFAULT_REQUEST_ATTRIBUTE;
+
+    /**
+     * The name of the session attribute holding the locale chosen by
+     * the user, or <code>null</code> if there is none.
+     */
+    private String sessionAttribute = null;
+
+    /**
+     * The name of the cookie holding the language tag chosen by the
+     * user, or <code>null</code> if there is none.
+     */
+    private String localeCookie = null;
+
     /**
      * Creates a new instance.
      */
     public DefaultLocalizationService()
     {
         super();
+        headerLocales = new BoundedCache<String, Locale>(DEFAULT_HEADER_CACHE_SIZE);
+        negotiatedLocales = new BoundedCache<CacheKey, Locale>(DEFAULT_HEADER_CACHE_SIZE);
+    }
+
+    /**
+     * Avalon lifecycle method
+     *
+     * {@link org.apache.avalon.framework.configuration.Configurable}
+     *
+     * @param conf the configuration
+     * @throws ConfigurationException if failed to configure
+     */
+    @Override
+    public void configure(Configuration conf) throws ConfigurationException
+    {
+        super.configure(conf);
+        negotiate = conf.getAttributeAsBoolean(LOCALE_NEGOTIATION, false);
+        int headerCacheSize = conf.getAttributeAsInteger(HEADER_CACHE_SIZE, DEFAULT_HEADER_CACHE_SIZE);
+        headerLocales = new BoundedCache<String, Locale>(headerCacheSize);
+        negotiatedLocales = new BoundedCache<CacheKey, Locale>(headerCacheSize);
+        requestAttribute = StringUtils.trimToNull(conf.getAttribute(REQUEST_ATTRIBUTE, DEFAULT_REQUEST_ATTRIBUTE));
+        sessionAttribute = StringUtils.trimToNull(conf.getAttribute(LOCALE_SESSION_ATTRIBUTE, null));
+        localeCookie = StringUtils.trimToNull(conf.getAttribute(LOCALE_COOKIE, null));
+    }
+
+    /**
+     * Reloads the named bundles and drops the negotiated locales,
+     * which depend on the available bundles.
+     *
+     * @param names The names of the bundles to reload.
+     */
+    @Override
+    protected void reloadBundles(Collection<String> names)
+    {
+        super.reloadBundles(names);
+        negotiatedLocales.clear();
     }
 
     /**
@@ -91,7 +195,9 @@ public class DefaultLocalizationService
      */
     public ResourceBundle getBundle(String bundleName, String languageHeader)
     {
-        return getBundle(bundleName, getLocale(languageHeader));
+        return getBundle(bundleName, (negotiate
+            ? negotiateLocale(languageHeader, bundleName)
+            : getLocale(languageHeader)));
     }
 
     /**
@@ -104,7 +210,7 @@ public class DefaultLocalizationService
      */
     public ResourceBundle getBundle(HttpServletRequest req)
     {
-        return getBundle(getDefaultBundleName(), getLocale(req));
+        return getBundle(getDefaultBundleName(), req);
     }
 
     /**
@@ -121,36 +227,291 @@ public class DefaultLocalizationService
      */
     public ResourceBundle getBundle(String bundleName, HttpServletRequest req)
     {
-        return getBundle(bundleName, getLocale(req));
+        RequestLocale resolved = getRequestLocale(req);
+        if (resolved == null)
+        {
+            Locale override = getOverride(req);
+            return getBundle(bundleName, (override != null ? override : negotiate
+                ? negotiateLocale(req.getHeader(ACCEPT_LANGUAGE), bundleName)
+                : getLocale(req.getHeader(ACCEPT_LANGUAGE))));
+        }
+
+        String name = toBundleName(bundleName);
+        ResourceBundle rb = resolved.bundles.get(name);
+        if (rb == null)
+        {
+            rb = getBundle(name, (resolved.override != null || !negotiate
+                ? resolved.locale
+                : negotiateLocale(resolved.header, name)));
+            resolved.bundles.put(name, rb);
+        }
+        return rb;
     }
 
-    /* (non-Javadoc)
+    /**
      * @see org.apache.fulcrum.localization.LocalizationService#getLocale(jakarta.servlet.http.HttpServletRequest)
+     *
+     * A locale chosen by the user in the configured session attribute
+     * or cookie takes precedence over the "Accept-Language" header.
+     * The resolved locale is cached in a request attribute; setting
+     * that attribute to a <code>Locale</code> switches the locale for
+     * the rest of the request.
      */
     public Locale getLocale(HttpServletRequest req)
     {
-        return getLocale(req.getHeader(ACCEPT_LANGUAGE));
+        RequestLocale resolved = getRequestLocale(req);
+        if (resolved != null)
+        {
+            return resolved.locale;
+        }
+        Locale override = getOverride(req);
+        return (override != null ? override : getLocale(req.getHeader(ACCEPT_LANGUAGE)));
         // (JSS) Backed out this change because Tomcat seems to be returning
         //       the wrong result and things just are not working.
         //        Locale l = req.getLocale();
         //        return (l != null ? l : getLocale(req.getHeader(ACCEPT_LANGUAGE)));
     }
 
-    /* (non-Javadoc)
+    /**
+     * Retrieves the locale and bundles resolved for a request from the
+     * request attribute, resolving the locale on first use.
+     *
+     * @param req The request.
+     * @return The resolved locale and bundles, or <code>null</code> if
+     * no request attribute is configured.
+     */
+    private RequestLocale getRequestLocale(HttpServletRequest req)
+    {
+        if (requestAttribute == null)
+        {
+            return null;
+        }
+        Object value = req.getAttribute(requestAttribute);
+        int generation = getGeneration();
+        if (value instanceof RequestLocale)
+        {
+            RequestLocale resolved = (RequestLocale) value;
+            if (resolved.generation == generation)
+            {
+                return resolved;
+            }
+            // the bundles have been reloaded since
+            value = resolved.override;
+        }
+        Locale override = (value instanceof Locale ? (Locale) value : getOverride(req));
+        String header = req.getHeader(ACCEPT_LANGUAGE);
+        RequestLocale resolved = new RequestLocale(header, override,
+            (override != null ? override : getLocale(header)), generation);
+        req.setAttribute(requestAttribute, resolved);
+        return resolved;
+    }
+
+    /**
+     * Looks up the locale chosen by the user in the configured session
+     * attribute, which holds a <code>Locale</code> or a language tag,
+     * or else in the configured cookie, which holds a language tag.
+     *
+     * @param req The request.
+     * @return The chosen locale, or <code>null</code> if there is none.
+     */
+    private Locale getOverride(HttpServletRequest req)
+    {
+        if (sessionAttribute != null)
+        {
+            HttpSession session = req.getSession(false);
+            if (session != null)
+            {
+                Locale locale = toLocale(session.getAttribute(sessionAttribute));
+                if (locale != null)
+                {
+                    return locale;
+                }
+            }
+        }
+        if (localeCookie != null && req.getCookies() != null)
+        {
+            for (Cookie cookie : req.getCookies())
+            {
+                if (localeCookie.equals(cookie.getName()))
+                {
+                    Locale locale = toLocale(cookie.getValue());
+                    if (locale != null)
+                    {
+                        return locale;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts the value of a session attribute or cookie to a locale.
+     *
+     * @param value A <code>Locale</code> or a language tag like
+     * <code>de-CH</code> or <code>de_CH</code>.
+     * @return The locale, or <code>null</code> if the value is none.
+     */
+    private static Locale toLocale(Object value)
+    {
+        if (value instanceof Locale)
+        {
+            return (Locale) value;
+        }
+        if (value instanceof String && StringUtils.isNotBlank((String) value))
+        {
+            Locale locale = Locale.forLanguageTag(((String) value).trim().replace('_', '-'));
+            return (locale.getLanguage().isEmpty() ? null : locale);
+        }
+        return null;
+    }
+
+    /**
      * @see org.apache.fulcrum.localization.LocalizationService#getLocale(java.lang.String)
+     *
+     * Parsed headers are cached, so recurring header values are only
+     * parsed once.  If locale negotiation is enabled, the locale is
+     * negotiated against the default bundle.
      */
     public Locale getLocale(String header)
     {
+        if (negotiate)
+        {
+            return negotiateLocale(header, null);
+        }
+
         if (StringUtils.isNotEmpty(header))
         {
-            LocaleTokenizer tok = new LocaleTokenizer(header);
-            if (tok.hasNext())
+            Locale locale = headerLocales.get(header, h ->
+            {
+                LocaleTokenizer tok = new LocaleTokenizer(h);
+                return (tok.hasNext() ? (Locale) tok.next() : null);
+            });
+            if (locale != null)
             {
-                return (Locale) tok.next();
+                return locale;
             }
         }
         
         // Couldn't parse locale.
         return getDefaultLocale();
     }
+
+    /**
+     * @see org.apache.fulcrum.localization.LocalizationService#negotiateLocale(java.lang.String, java.lang.String)
+     *
+     * Negotiated locales are cached per header value and bundle.
+     */
+    public Locale negotiateLocale(String header, String bundleName)
+    {
+        if (StringUtils.isEmpty(header))
+        {
+            return getDefaultLocale();
+        }
+        return negotiatedLocales.get(new CacheKey(toBundleName(bundleName), null, header),
+            k -> negotiate(k.key, k.bundleName));
+    }
+
+    /**
+     * Matches the language ranges of a header against the locales
+     * the bundle is available in.  The available locales are those
+     * the bundle resolves to for each of the requested ranges.
+     *
+     * @param header The language header.
+     * @param bundleName Name of the bundle.
+     * @return The negotiated locale.
+     */
+    private Locale negotiate(String header, String bundleName)
+    {
+        List<Locale.LanguageRange> ranges;
+        try
+        {
+            ranges = Locale.LanguageRange.parse(header);
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Malformed header, fall back to the lenient tokenizer.
+            getLogger().debug("Cannot parse language header: " + header);
+            LocaleTokenizer tok = new LocaleTokenizer(header);
+            return (tok.hasNext() ? (Locale) tok.next() : getDefaultLocale());
+        }
+
+        // Collect the locales the bundle is available in.
+        List<Locale> resolved = new ArrayList<Locale>(ranges.size());
+        Set<Locale> available = new LinkedHashSet<Locale>();
+        for (Locale.LanguageRange range : ranges)
+        {
+            Locale locale = null;
+            if (range.getWeight() > 0 && !range.getRange().contains("*"))
+            {
+                ResourceBundle rb =
+                    getBundleOrNull(bundleName, Locale.forLanguageTag(range.getRange()));
+                if (rb != null && !rb.getLocale().getLanguage().isEmpty())
+                {
+                    locale = rb.getLocale();
+                    available.add(locale);
+                }
+            }
+            resolved.add(locale);
+        }
+
+        Locale match = Locale.lookup(ranges, available);
+        if (match != null)
+        {
+            return match;
+        }
+
+        // Lookup compares language tags literally, so a range like
+        // zh-Hant-TW does not match a bundle for zh_TW.  Accept the
+        // bundle a range resolved to if it is in the requested language.
+        for (int i = 0; i < ranges.size(); i++)
+        {
+            Locale locale = resolved.get(i);
+            if (locale != null && locale.getLanguage().equals(
+                Locale.forLanguageTag(ranges.get(i).getRange()).getLanguage()))
+            {
+                return locale;
+            }
+        }
+
+        return getDefaultLocale();
+    }
+
+    /**
+     * The locale and bundles resolved for one request.  Requests are
+     * handled by one thread at a time, so the bundles need no
+     * synchronization.
+     */
+    private static final class RequestLocale
+    {
+        /** The "Accept-Language" header of the request. */
+        final String header;
+
+        /** The locale chosen by the user, or <code>null</code>. */
+        final Locale override;
+
+        /** The resolved locale. */
+        final Locale locale;
+
+        /** The generation of the bundles when resolved. */
+        final int generation;
+
+        /** The resolved bundles keyed by bundle name. */
+        final Map<String, ResourceBundle> bundles = new HashMap<String, ResourceBundle>(4);
+
+        /**
+         * @param header The "Accept-Language" header of the request.
+         * @param override The locale chosen by the user, or
+         * <code>null</code>.
+         * @param locale The resolved locale.
+         * @param generation The generation of the bundles.
+         */
+        RequestLocale(String header, Locale override, Locale locale, int generation)
+        {
+            this.header = header;
+            this.override = override;
+            this.locale = locale;
+            this.generation = generation;
+        }
+    }
 }
@@ -0,0 +1,850 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.Format;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.fulcrum.localization.LocaleFormats.SharedFormat;
+
+/**
+ * A message pattern in ICU syntax, parsed once into an immutable tree.
+ *
+ * <p>
+ * Besides the placeholders of <code>MessageFormat</code>, like
+ * <code>{0}</code>, <code>{0,number,integer}</code> or
+ * <code>{0,date,short}</code>, the syntax chooses sub-messages by the
+ * CLDR plural category of a number or by a keyword:
+ * </p>
+ * <pre>
+ * {0,plural,=0{No files}one{# file}other{# files}} in {1,select,trash{the trash}other{{1}}}
+ * </pre>
+ *
+ * <p>
+ * <code>plural</code> and <code>selectordinal</code> accept an
+ * <code>offset:</code> and explicit values like <code>=0</code>, and
+ * format the number minus the offset in place of <code>#</code>.
+ * Unlike in <code>MessageFormat</code>, a single apostrophe is only
+ * quoting if it precedes a brace, or a <code>#</code> in a plural
+ * sub-message; <code>''</code> always stands for one apostrophe.
+ * Arguments are referenced by index, as the <code>format</code>
+ * methods pass them in an array.
+ * </p>
+ *
+ * @version $Id$
+ */
+final class IcuMessage implements MessagePattern
+{
+    /** The parsed message. */
+    private final Node[] nodes;
+
+    /**
+     * Parses a message pattern.
+     *
+     * @param pattern the pattern in ICU syntax
+     * @param formats the formatters of the locale to format for
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    IcuMessage(String pattern, LocaleFormats formats)
+    {
+        Parser parser = new Parser(pattern, formats);
+        this.nodes = parser.parseMessage(0, false);
+    }
+
+    @Override
+    public String format(Object[] args)
+    {
+        StringBuilder result = new StringBuilder();
+        try
+        {
+            append(result, nodes, args, null);
+        }
+        catch (IOException e)
+        {
+            // a StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return result.toString();
+    }
+
+    @Override
+    public void formatTo(Appendable out, MessageArguments args) throws IOException
+    {
+        append(out, nodes, args.toArray(), null);
+    }
+
+    /**
+     * Appends a message or sub-message.
+     *
+     * @param out where to append the message
+     * @param message the parsed message
+     * @param args the arguments
+     * @param number the number of the enclosing plural placeholder, or
+     * <code>null</code>
+     * @throws IOException if appending fails
+     */
+    private static void append(Appendable out, Node[] message, Object[] args, Number number)
+        throws IOException
+    {
+        for (Node node : message)
+        {
+            node.append(out, args, number);
+        }
+    }
+
+    /**
+     * A part of a parsed message.
+     */
+    private abstract static class Node
+    {
+        /**
+         * Appends this part of the message.
+         *
+         * @param out where to append the part
+         * @param args the arguments
+         * @param number the number of the enclosing plural placeholder,
+         * or <code>null</code>
+         * @throws IOException if appending fails
+         */
+        abstract void append(Appendable out, Object[] args, Number number) throws IOException;
+    }
+
+    /**
+     * Literal text.
+     */
+    private static final class Text extends Node
+    {
+        /** The text. */
+        private final String text;
+
+        /**
+         * @param text the text
+         */
+        Text(String text)
+        {
+            this.text = text;
+        }
+
+        @Override
+        void append(Appendable out, Object[] args, Number number) throws IOException
+        {
+            out.append(text);
+        }
+    }
+
+    /**
+     * A simple, number or date placeholder.
+     */
+    private static final class Argument extends Node
+    {
+        /** The index of the argument. */
+        private final int index;
+
+        /** The formatters of the locale. */
+        private final LocaleFormats formats;
+
+        /** The formatter, or <code>null</code> for a simple placeholder. */
+        private final SharedFormat format;
+
+        /**
+         * @param index the index of the argument
+         * @param formats the formatters of the locale
+         * @param format the formatter, or <code>null</code> for a simple
+         * placeholder
+         */
+        Argument(int index, LocaleFormats formats, SharedFormat format)
+        {
+            this.index = index;
+            this.formats = formats;
+            this.format = format;
+        }
+
+        @Override
+        void append(Appendable out, Object[] args, Number number) throws IOException
+        {
+            if (args == null || index >= args.length)
+            {
+                out.append('{').append(Integer.toString(index)).append('}');
+            }
+            else if (format == null || args[index] == null)
+            {
+                formats.appendPlain(out, args[index]);
+            }
+            else
+            {
+                format.format(out, args[index]);
+            }
+        }
+    }
+
+    /**
+     * The <code>#</code> in a plural sub-message.
+     */
+    private static final class Pound extends Node
+    {
+        /** The formatters of the locale. */
+        private final LocaleFormats formats;
+
+        /**
+         * @param formats the formatters of the locale
+         */
+        Pound(LocaleFormats formats)
+        {
+            this.formats = formats;
+        }
+
+        @Override
+        void append(Appendable out, Object[] args, Number number) throws IOException
+        {
+            formats.getNumberFormat().format(out, number);
+        }
+    }
+
+    /**
+     * A <code>plural</code> or <code>selectordinal</code> placeholder.
+     */
+    private static final class Plural extends Node
+    {
+        /** The index of the argument. */
+        private final int index;
+
+        /** The number subtracted from the argument. */
+        private final long offset;
+
+        /** The rules choosing the category. */
+        private final PluralRules rules;
+
+        /** The explicit values, as in <code>=0</code>. */
+        private final double[] values;
+
+        /** The sub-message of each explicit value. */
+        private final Node[][] valueMessages;
+
+        /** The categories. */
+        private final String[] categories;
+
+        /** The sub-message of each category. */
+        private final Node[][] categoryMessages;
+
+        /** The sub-message of the category <code>other</code>. */
+        private final Node[] other;
+
+        /**
+         * @param index the index of the argument
+         * @param offset the number subtracted from the argument
+         * @param rules the rules choosing the category
+         * @param selectors the explicit values and categories
+         * @param messages the sub-message of each selector
+         */
+        Plural(int index, long offset, PluralRules rules, List<String> selectors, List<Node[]> messages)
+        {
+            this.index = index;
+            this.offset = offset;
+            this.rules = rules;
+            List<Double> explicit = new ArrayList<Double>();
+            List<Node[]> explicitMessages = new ArrayList<Node[]>();
+            List<String> keywords = new ArrayList<String>();
+            List<Node[]> keywordMessages = new ArrayList<Node[]>();
+            Node[] otherMessage = null;
+            for (int i = 0; i < selectors.size(); i++)
+            {
+                String selector = selectors.get(i);
+                if (selector.startsWith("="))
+                {
+                    explicit.add(Double.valueOf(selector.substring(1)));
+                    explicitMessages.add(messages.get(i));
+                }
+                else if (PluralRules.OTHER.equals(selector))
+                {
+                    otherMessage = messages.get(i);
+                }
+                else
+                {
+                    keywords.add(selector);
+                    keywordMessages.add(messages.get(i));
+                }
+            }
+            this.values = explicit.stream().mapToDouble(Double::doubleValue).toArray();
+            this.valueMessages = explicitMessages.toArray(new Node[0][]);
+            this.categories = keywords.toArray(new String[0]);
+            this.categoryMessages = keywordMessages.toArray(new Node[0][]);
+            this.other = otherMessage;
+        }
+
+        @Override
+        void append(Appendable out, Object[] args, Number number) throws IOException
+        {
+            Object arg = (args == null || index >= args.length) ? null : args[index];
+            if (!(arg instanceof Number))
+            {
+                throw new IllegalArgumentException("Argument " + index + " is not a number: " + arg);
+            }
+            // explicit values match the argument, # shows it minus the offset
+            double exact = ((Number) arg).doubleValue();
+            Number value = (offset != 0 ? subtractOffset((Number) arg) : (Number) arg);
+            for (int i = 0; i < values.length; i++)
+            {
+                if (values[i] == exact)
+                {
+                    IcuMessage.append(out, valueMessages[i], args, value);
+                    return;
+                }
+            }
+            String category = rules.select(value);
+            Node[] message = other;
+            for (int i = 0; i < categories.length; i++)
+            {
+                if (categories[i].equals(category))
+                {
+                    message = categoryMessages[i];
+                    break;
+                }
+            }
+            IcuMessage.append(out, message, args, value);
+        }
+
+        /**
+         * @param value the argument
+         * @return the argument minus the offset, keeping its type where
+         * it matters for the plural operands
+         */
+        private Number subtractOffset(Number value)
+        {
+            if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte)
+            {
+                return Long.valueOf(value.longValue() - offset);
+            }
+            if (value instanceof BigDecimal)
+            {
+                return ((BigDecimal) value).subtract(BigDecimal.valueOf(offset));
+            }
+            return Double.valueOf(value.doubleValue() - offset);
+        }
+    }
+
+    /**
+     * A <code>select</code> placeholder.
+     */
+    private static final class Select extends Node
+    {
+        /** The index of the argument. */
+        private final int index;
+
+        /** The keywords. */
+        private final String[] keywords;
+
+        /** The sub-message of each keyword. */
+        private final Node[][] messages;
+
+        /** The sub-message of the keyword <code>other</code>. */
+        private final Node[] other;
+
+        /**
+         * @param index the index of the argument
+         * @param keywords the keywords
+         * @param messages the sub-message of each keyword
+         */
+        Select(int index, List<String> keywords, List<Node[]> messages)
+        {
+            this.index = index;
+            this.keywords = keywords.toArray(new String[0]);
+            this.messages = messages.toArray(new Node[0][]);
+            this.other = messages.get(keywords.indexOf(PluralRules.OTHER));
+        }
+
+        @Override
+        void append(Appendable out, Object[] args, Number number) throws IOException
+        {
+            Object arg = (args == null || index >= args.length) ? null : args[index];
+            String keyword = String.valueOf(arg);
+            Node[] message = other;
+            for (int i = 0; i < keywords.length; i++)
+            {
+                if (keywords[i].equals(keyword))
+                {
+                    message = messages[i];
+                    break;
+                }
+            }
+            IcuMessage.append(out, message, args, number);
+        }
+    }
+
+    /**
+     * Parses a pattern into nodes.
+     */
+    private static final class Parser
+    {
+        /** The pattern. */
+        private final String pattern;
+
+        /** The formatters of the locale. */
+        private final LocaleFormats formats;
+
+        /** The position in the pattern. */
+        private int position = 0;
+
+        /**
+         * @param pattern the pattern
+         * @param formats the formatters of the locale
+         */
+        Parser(String pattern, LocaleFormats formats)
+        {
+            this.pattern = pattern;
+            this.formats = formats;
+        }
+
+        /**
+         * Parses a message up to the end of the pattern, or up to the
+         * closing brace of a sub-message.
+         *
+         * @param depth the nesting depth, 0 for the whole pattern
+         * @param plural whether this is a sub-message of a plural
+         * placeholder, in which <code>#</code> stands for the number
+         * @return the parsed message
+         */
+        Node[] parseMessage(int depth, boolean plural)
+        {
+            List<Node> nodes = new ArrayList<Node>();
+            StringBuilder text = new StringBuilder();
+            while (position < pattern.length())
+            {
+                char c = pattern.charAt(position);
+                if (c == '\'')
+                {
+                    parseApostrophe(text, plural);
+                }
+                else if (c == '{')
+                {
+                    flush(text, nodes);
+                    position++;
+                    nodes.add(parseArgument(depth));
+                }
+                else if (c == '}')
+                {
+                    if (depth == 0)
+                    {
+                        throw error("Unmatched '}'");
+                    }
+                    break;
+                }
+                else if (c == '#' && plural)
+                {
+                    flush(text, nodes);
+                    position++;
+                    nodes.add(new Pound(formats));
+                }
+                else
+                {
+                    text.append(c);
+                    position++;
+                }
+            }
+            if (depth > 0 && position >= pattern.length())
+            {
+                throw error("Unmatched '{'");
+            }
+            flush(text, nodes);
+            return nodes.toArray(new Node[0]);
+        }
+
+        /**
+         * Parses an apostrophe, which either stands for itself or
+         * quotes literal text.
+         *
+         * @param text the literal text parsed so far
+         * @param plural whether <code>#</code> is special
+         */
+        private void parseApostrophe(StringBuilder text, boolean plural)
+        {
+            char next = position + 1 < pattern.length() ? pattern.charAt(position + 1) : 0;
+            if (next == '\'')
+            {
+                text.append('\'');
+                position += 2;
+            }
+            else if (next == '{' || next == '}' || (next == '#' && plural))
+            {
+                position++;
+                while (position < pattern.length())
+                {
+                    char c = pattern.charAt(position++);
+                    if (c != '\'')
+                    {
+                        text.append(c);
+                    }
+                    else if (position < pattern.length() && pattern.charAt(position) == '\'')
+                    {
+                        text.append('\'');
+                        position++;
+                    }
+                    else
+                    {
+                        break;
+                    }
+                }
+            }
+            else
+            {
+                text.append('\'');
+                position++;
+            }
+        }
+
+        /**
+         * Parses a placeholder after its opening brace, up to and
+         * including its closing brace.
+         *
+         * @param depth the nesting depth of the enclosing message
+         * @return the parsed placeholder
+         */
+        private Node parseArgument(int depth)
+        {
+            skipWhitespace();
+            String name = parseIdentifier();
+            int index;
+            try
+            {
+                index = Integer.parseInt(name);
+            }
+            catch (NumberFormatException e)
+            {
+                throw error("Argument index expected instead of '" + name + "'");
+            }
+            skipWhitespace();
+            if (accept('}'))
+            {
+                return new Argument(index, formats, null);
+            }
+            expect(',');
+            skipWhitespace();
+            String type = parseIdentifier();
+            skipWhitespace();
+            switch (type)
+            {
+                case "number":
+                case "date":
+                case "time":
+                    String style = null;
+                    if (!accept('}'))
+                    {
+                        expect(',');
+                        style = parseStyle();
+                    }
+                    return new Argument(index, formats, formats.getFormat(makeFormat(type, style)));
+                case "plural":
+                case "selectordinal":
+                    expect(',');
+                    return parsePlural(index, depth, "selectordinal".equals(type));
+                case "select":
+                    expect(',');
+                    return parseSelect(index, depth);
+                default:
+                    throw error("Unknown argument type '" + type + "'");
+            }
+        }
+
+        /**
+         * Parses the style of a number or date placeholder, up to and
+         * including the closing brace.
+         *
+         * @return the style
+         */
+        private String parseStyle()
+        {
+            int start = position;
+            boolean quoted = false;
+            while (position < pattern.length())
+            {
+                char c = pattern.charAt(position);
+                if (c == '\'')
+                {
+                    quoted = !quoted;
+                }
+                else if (c == '}' && !quoted)
+                {
+                    String style = pattern.substring(start, position).trim();
+                    position++;
+                    return style;
+                }
+                position++;
+            }
+            throw error("Unmatched '{'");
+        }
+
+        /**
+         * Parses the selectors and sub-messages of a plural placeholder.
+         *
+         * @param index the index of the argument
+         * @param depth the nesting depth of the enclosing message
+         * @param ordinal whether to choose by ordinal categories
+         * @return the parsed placeholder
+         */
+        private Node parsePlural(int index, int depth, boolean ordinal)
+        {
+            skipWhitespace();
+            long offset = 0;
+            if (pattern.startsWith("offset:", position))
+            {
+                position += "offset:".length();
+                skipWhitespace();
+                try
+                {
+                    offset = Long.parseLong(parseIdentifier());
+                }
+                catch (NumberFormatException e)
+                {
+                    throw error("Invalid offset");
+                }
+            }
+            List<String> selectors = new ArrayList<String>();
+            List<Node[]> messages = new ArrayList<Node[]>();
+            parseSubMessages(depth, true, selectors, messages);
+            for (String selector : selectors)
+            {
+                if (selector.startsWith("="))
+                {
+                    try
+                    {
+                        Double.parseDouble(selector.substring(1));
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        throw error("Invalid explicit value '" + selector + "'");
+                    }
+                }
+            }
+            return new Plural(index, offset,
+                PluralRules.forLocale(formats.getLocale(), ordinal), selectors, messages);
+        }
+
+        /**
+         * Parses the keywords and sub-messages of a select placeholder.
+         *
+         * @param index the index of the argument
+         * @param depth the nesting depth of the enclosing message
+         * @return the parsed placeholder
+         */
+        private Node parseSelect(int index, int depth)
+        {
+            List<String> keywords = new ArrayList<String>();
+            List<Node[]> messages = new ArrayList<Node[]>();
+            parseSubMessages(depth, false, keywords, messages);
+            return new Select(index, keywords, messages);
+        }
+
+        /**
+         * Parses selectors and their sub-messages up to and including
+         * the closing brace of the placeholder.
+         *
+         * @param depth the nesting depth of the enclosing message
+         * @param plural whether these are sub-messages of a plural
+         * placeholder
+         * @param selectors the selectors parsed
+         * @param messages the sub-messages parsed
+         */
+        private void parseSubMessages(int depth, boolean plural, List<String> selectors, List<Node[]> messages)
+        {
+            while (true)
+            {
+                skipWhitespace();
+                if (accept('}'))
+                {
+                    break;
+                }
+                String selector = accept('=') ? "=" + parseIdentifier() : parseIdentifier();
+                if (selector.isEmpty() || selector.equals("="))
+                {
+                    throw error("Selector expected");
+                }
+                if (selectors.contains(selector))
+                {
+                    throw error("Duplicate selector '" + selector + "'");
+                }
+                skipWhitespace();
+                expect('{');
+                selectors.add(selector);
+                messages.add(parseMessage(depth + 1, plural));
+                expect('}');
+            }
+            if (!selectors.contains(PluralRules.OTHER))
+            {
+                throw error("Missing 'other' sub-message");
+            }
+        }
+
+        /**
+         * Creates the format of a number or date placeholder, as
+         * <code>MessageFormat</code> does.
+         *
+         * @param type the type of the placeholder
+         * @param style the style, or <code>null</code> for none
+         * @return the format
+         */
+        private Format makeFormat(String type, String style)
+        {
+            Locale locale = formats.getLocale();
+            if ("number".equals(type))
+            {
+                if (style == null || style.isEmpty())
+                {
+                    return NumberFormat.getInstance(locale);
+                }
+                switch (style)
+                {
+                    case "integer":
+                        return NumberFormat.getIntegerInstance(locale);
+                    case "currency":
+                        return NumberFormat.getCurrencyInstance(locale);
+                    case "percent":
+                        return NumberFormat.getPercentInstance(locale);
+                    default:
+                        if (style.startsWith("::"))
+                        {
+                            throw error("Number skeletons are not supported");
+                        }
+                        return new DecimalFormat(style, DecimalFormatSymbols.getInstance(locale));
+                }
+            }
+            int dateStyle = DateFormat.DEFAULT;
+            if (style != null && !style.isEmpty())
+            {
+                switch (style)
+                {
+                    case "short":
+                        dateStyle = DateFormat.SHORT;
+                        break;
+                    case "medium":
+                        dateStyle = DateFormat.MEDIUM;
+                        break;
+                    case "long":
+                        dateStyle = DateFormat.LONG;
+                        break;
+                    case "full":
+                        dateStyle = DateFormat.FULL;
+                        break;
+                    default:
+                        if (style.startsWith("::"))
+                        {
+                            throw error("Date skeletons are not supported");
+                        }
+                        return new SimpleDateFormat(style, locale);
+                }
+            }
+            return "date".equals(type) ? DateFormat.getDateInstance(dateStyle, locale)
+                : DateFormat.getTimeInstance(dateStyle, locale);
+        }
+
+        /**
+         * Parses a name, number or keyword.
+         *
+         * @return the identifier, which may be empty
+         */
+        private String parseIdentifier()
+        {
+            int start = position;
+            while (position < pattern.length())
+            {
+                char c = pattern.charAt(position);
+                if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.')
+                {
+                    break;
+                }
+                position++;
+            }
+            return pattern.substring(start, position);
+        }
+
+        /**
+         * Skips white space.
+         */
+        private void skipWhitespace()
+        {
+            while (position < pattern.length() && Character.isWhitespace(pattern.charAt(position)))
+            {
+                position++;
+            }
+        }
+
+        /**
+         * Skips a character if it is next.
+         *
+         * @param c the character
+         * @return whether it was next
+         */
+        private boolean accept(char c)
+        {
+            if (position < pattern.length() && pattern.charAt(position) == c)
+            {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Skips a character which must be next.
+         *
+         * @param c the character
+         */
+        private void expect(char c)
+        {
+            if (!accept(c))
+            {
+                throw error("'" + c + "' expected");
+            }
+        }
+
+        /**
+         * Appends literal text to the nodes, if there is any.
+         *
+         * @param text the literal text, emptied
+         * @param nodes the nodes
+         */
+        private static void flush(StringBuilder text, List<Node> nodes)
+        {
+            if (text.length() > 0)
+            {
+                nodes.add(new Text(text.toString()));
+                text.setLength(0);
+            }
+        }
+
+        /**
+         * @param message what is wrong
+         * @return the exception to throw
+         */
+        private IllegalArgumentException error(String message)
+        {
+            return new IllegalArgumentException(message + " at position " + position
+                + " of message pattern: " + pattern);
+        }
+    }
+}
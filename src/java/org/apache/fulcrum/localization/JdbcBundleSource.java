@@ -0,0 +1,281 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import org.apache.avalon.framework.configuration.Configurable;
+import org.apache.avalon.framework.configuration.Configuration;
+import org.apache.avalon.framework.configuration.ConfigurationException;
+import org.apache.commons.lang3.LocaleUtils;
+
+/**
+ * Reads texts from a database table with the columns
+ *
+ * <ul>
+ * <li><code>BUNDLE_NAME</code>: the name of the bundle,</li>
+ * <li><code>LOCALE</code>: the locale as formatted by
+ * <code>Locale.toString()</code>, e.g. <code>de_DE</code>, or an empty
+ * string for the base bundle,</li>
+ * <li><code>MESSAGE_KEY</code>: the key of the text,</li>
+ * <li><code>MESSAGE_VALUE</code>: the text, or <code>NULL</code> if the
+ * text was removed,</li>
+ * <li><code>VERSION</code>: a number raised with every change of the
+ * row, e.g. from a sequence.</li>
+ * </ul>
+ *
+ * <p>
+ * The texts of a locale are read with a single query.  Refreshes read
+ * only the rows with a version above the highest version seen so far,
+ * so removing a text means setting its value to <code>NULL</code> and
+ * raising its version rather than deleting the row.
+ * </p>
+ *
+ * <p>
+ * The versions must become visible in ascending order.  A transaction
+ * which takes its version from a sequence and commits after another
+ * transaction with a higher version has already been seen is missed by
+ * the refreshes, until its rows change again or the service reloads the
+ * texts.  Serialize the writers, e.g. by locking a row of their own, if
+ * the texts are changed concurrently.
+ * </p>
+ *
+ * <p>
+ * The database is configured either with the JNDI name of a
+ * <code>DataSource</code> or with a JDBC URL:
+ * </p>
+ *
+ * <pre>
+ * &lt;source class="org.apache.fulcrum.localization.JdbcBundleSource"&gt;
+ *   &lt;datasource&gt;java:comp/env/jdbc/localization&lt;/datasource&gt;
+ *   &lt;table&gt;LOCALIZATION&lt;/table&gt;
+ * &lt;/source&gt;
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class JdbcBundleSource implements BundleSource, Configurable
+{
+    /** The default name of the table. */
+    public static final String DEFAULT_TABLE = "LOCALIZATION";
+
+    /** The valid table names, possibly qualified by a schema. */
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+    /** The data source, or <code>null</code> if connecting by URL. */
+    private DataSource dataSource;
+
+    /** The JDBC URL, or <code>null</code> if using a data source. */
+    private String url;
+
+    /** The database user when connecting by URL. */
+    private String user;
+
+    /** The database password when connecting by URL. */
+    private String password;
+
+    /** The query for the texts of a locale. */
+    private String loadQuery;
+
+    /** The query for the current version. */
+    private String versionQuery;
+
+    /** The query for the changes since a version. */
+    private String changesQuery;
+
+    /**
+     * Creates a source to be configured.
+     */
+    public JdbcBundleSource()
+    {
+        setTable(DEFAULT_TABLE);
+    }
+
+    /**
+     * Creates a source reading from a data source.
+     *
+     * @param dataSource The data source.
+     * @param table The name of the table.
+     */
+    public JdbcBundleSource(DataSource dataSource, String table)
+    {
+        this.dataSource = dataSource;
+        setTable(table);
+    }
+
+    /**
+     * Avalon lifecycle method
+     *
+     * {@link org.apache.avalon.framework.configuration.Configurable}
+     *
+     * @param conf the <code>source</code> configuration
+     * @throws ConfigurationException if failed to configure
+     */
+    @Override
+    public void configure(Configuration conf) throws ConfigurationException
+    {
+        String table = conf.getChild("table").getValue(DEFAULT_TABLE).trim();
+        if (!TABLE_NAME.matcher(table).matches())
+        {
+            throw new ConfigurationException("Invalid table name: " + table, conf);
+        }
+        setTable(table);
+
+        String jndiName = conf.getChild("datasource").getValue(null);
+        if (jndiName != null)
+        {
+            try
+            {
+                dataSource = (DataSource) new InitialContext().lookup(jndiName.trim());
+            }
+            catch (NamingException e)
+            {
+                throw new ConfigurationException("Cannot look up data source " + jndiName, conf, e);
+            }
+        }
+        else
+        {
+            url = conf.getChild("url").getValue().trim();
+            user = conf.getChild("user").getValue(null);
+            password = conf.getChild("password").getValue(null);
+        }
+    }
+
+    /**
+     * Builds the queries for a table.
+     *
+     * @param table The name of the table.
+     */
+    private void setTable(String table)
+    {
+        if (!TABLE_NAME.matcher(table).matches())
+        {
+            throw new IllegalArgumentException("Invalid table name: " + table);
+        }
+        loadQuery = "SELECT BUNDLE_NAME, MESSAGE_KEY, MESSAGE_VALUE FROM " + table
+            + " WHERE LOCALE = ? AND MESSAGE_VALUE IS NOT NULL";
+        versionQuery = "SELECT MAX(VERSION) FROM " + table;
+        changesQuery = "SELECT BUNDLE_NAME, LOCALE, MESSAGE_KEY, MESSAGE_VALUE FROM " + table
+            + " WHERE VERSION > ?";
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.BundleSource#load(java.util.Locale)
+     */
+    @Override
+    public Map<String, Map<String, String>> load(Locale locale) throws IOException
+    {
+        Map<String, Map<String, String>> bundles = new HashMap<String, Map<String, String>>();
+        try (Connection con = getConnection();
+             PreparedStatement stmt = con.prepareStatement(loadQuery))
+        {
+            stmt.setString(1, locale.toString());
+            try (ResultSet rs = stmt.executeQuery())
+            {
+                while (rs.next())
+                {
+                    bundles.computeIfAbsent(rs.getString(1), name -> new HashMap<String, String>())
+                        .put(rs.getString(2), rs.getString(3));
+                }
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new IOException("Cannot load texts for " + locale, e);
+        }
+        return bundles;
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.BundleSource#getVersion()
+     */
+    @Override
+    public long getVersion() throws IOException
+    {
+        try (Connection con = getConnection();
+             PreparedStatement stmt = con.prepareStatement(versionQuery);
+             ResultSet rs = stmt.executeQuery())
+        {
+            // An empty table has version 0.
+            return (rs.next() ? rs.getLong(1) : 0);
+        }
+        catch (SQLException e)
+        {
+            throw new IOException("Cannot read version", e);
+        }
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.BundleSource#getChanges(long)
+     */
+    @Override
+    public List<BundleChange> getChanges(long version) throws IOException
+    {
+        List<BundleChange> changes = new ArrayList<BundleChange>();
+        try (Connection con = getConnection();
+             PreparedStatement stmt = con.prepareStatement(changesQuery))
+        {
+            stmt.setLong(1, version);
+            try (ResultSet rs = stmt.executeQuery())
+            {
+                while (rs.next())
+                {
+                    String locale = rs.getString(2);
+                    changes.add(new BundleChange(rs.getString(1),
+                        (locale == null ? Locale.ROOT : LocaleUtils.toLocale(locale)),
+                        rs.getString(3), rs.getString(4)));
+                }
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new IOException("Cannot load changes since version " + version, e);
+        }
+        return changes;
+    }
+
+    /**
+     * @return A connection to the database.
+     * @throws SQLException if no connection can be made
+     */
+    private Connection getConnection() throws SQLException
+    {
+        if (dataSource != null)
+        {
+            return dataSource.getConnection();
+        }
+        return DriverManager.getConnection(url, user, password);
+    }
+}
@@ -0,0 +1,583 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.FieldPosition;
+import java.text.Format;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DecimalStyle;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The number and date formatters of one locale, shared by all messages
+ * formatted for it.
+ *
+ * <p>
+ * Building a <code>DecimalFormat</code> or <code>SimpleDateFormat</code>
+ * is expensive, and neither is thread-safe.  Every distinct sub-format
+ * of the messages, like <code>{0,number,#.##}</code> or
+ * <code>{1,date,long}</code>, is therefore mapped to one shared
+ * formatter per locale.  Date formats become an immutable
+ * <code>DateTimeFormatter</code> where that formats exactly like the
+ * <code>SimpleDateFormat</code>; date placeholders still only accept
+ * what <code>MessageFormat</code> accepts.  Other formats keep a few
+ * clones for reuse, which concurrent callers borrow.
+ * </p>
+ *
+ * @version $Id$
+ */
+final class LocaleFormats
+{
+    /** The number of clones of a format kept for reuse. */
+    private static final int SPARES = 4;
+
+    /** The dates to compare date formatters on, in the local zone. */
+    private static final LocalDateTime[] PROBES = new LocalDateTime[13];
+
+    static
+    {
+        for (int i = 0; i < 12; i++)
+        {
+            PROBES[i] = LocalDateTime.of(1965 + i * 7, i + 1, i * 2 + 1, i * 2, i * 5, i * 4, i * 1000000);
+        }
+        PROBES[12] = LocalDateTime.of(1600, 6, 15, 23, 59, 59);
+    }
+
+    /** The locale to format for. */
+    private final Locale locale;
+
+    /** The shared formatters keyed by the formats they were made for. */
+    private final ConcurrentHashMap<Format, SharedFormat> shared =
+        new ConcurrentHashMap<Format, SharedFormat>();
+
+    /** The formatter for numbers in plain placeholders. */
+    private final SharedFormat number;
+
+    /** The formatter for dates in plain placeholders. */
+    private final SharedFormat date;
+
+    /**
+     * @param locale the locale to format for
+     */
+    LocaleFormats(Locale locale)
+    {
+        this.locale = locale;
+        this.number = getFormat(NumberFormat.getInstance(locale));
+        this.date = getFormat(DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale));
+    }
+
+    /**
+     * @return the locale to format for
+     */
+    Locale getLocale()
+    {
+        return locale;
+    }
+
+    /**
+     * @return the formatter <code>MessageFormat</code> uses for numbers
+     * in plain placeholders
+     */
+    SharedFormat getNumberFormat()
+    {
+        return number;
+    }
+
+    /**
+     * @return the formatter <code>MessageFormat</code> uses for dates in
+     * plain placeholders
+     */
+    SharedFormat getDateFormat()
+    {
+        return date;
+    }
+
+    /**
+     * Appends an argument of a plain placeholder like
+     * <code>MessageFormat</code> does.
+     *
+     * @param out where to append the argument
+     * @param arg the argument
+     * @throws IOException if appending fails
+     */
+    void appendPlain(Appendable out, Object arg) throws IOException
+    {
+        if (arg == null)
+        {
+            out.append("null");
+        }
+        else if (arg instanceof Number)
+        {
+            number.format(out, arg);
+        }
+        else if (arg instanceof Date)
+        {
+            date.format(out, arg);
+        }
+        else if (arg instanceof String)
+        {
+            out.append((String) arg);
+        }
+        else
+        {
+            out.append(arg.toString());
+        }
+    }
+
+    /**
+     * Retrieves the shared formatter for a format of this locale.
+     *
+     * @param format the format as parsed from a message pattern, which
+     * must not be modified afterwards
+     * @return the shared formatter
+     */
+    SharedFormat getFormat(Format format)
+    {
+        SharedFormat result = shared.get(format);
+        if (result == null)
+        {
+            result = shared.computeIfAbsent(format, this::share);
+        }
+        return result;
+    }
+
+    /**
+     * Creates the shared formatter for a format.
+     *
+     * @param format the format
+     * @return the shared formatter
+     */
+    private SharedFormat share(Format format)
+    {
+        if (format instanceof DecimalFormat)
+        {
+            return new PooledNumberFormat((DecimalFormat) format);
+        }
+        if (format instanceof SimpleDateFormat)
+        {
+            SimpleDateFormat dateFormat = (SimpleDateFormat) format;
+            DateTimeFormatter formatter = toDateTimeFormatter(dateFormat);
+            if (formatter != null)
+            {
+                return new TimeFormat(formatter, dateFormat);
+            }
+        }
+        return new PooledFormat(format);
+    }
+
+    /**
+     * Creates a <code>DateTimeFormatter</code> formatting like a
+     * <code>SimpleDateFormat</code> of this locale.  Some patterns
+     * differ in details like the names of day periods, so the result is
+     * checked on a few dates.
+     *
+     * @param format the date format
+     * @return the formatter, or <code>null</code> if it formats some
+     * dates differently
+     */
+    private DateTimeFormatter toDateTimeFormatter(SimpleDateFormat format)
+    {
+        if (!(format.getCalendar() instanceof GregorianCalendar))
+        {
+            return null;
+        }
+        SimpleDateFormat probe = (SimpleDateFormat) format.clone();
+        ZoneId zone = probe.getTimeZone().toZoneId();
+        try
+        {
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern(probe.toPattern(), locale)
+                .withDecimalStyle(DecimalStyle.of(locale))
+                .withZone(zone);
+            for (LocalDateTime dateTime : PROBES)
+            {
+                Instant instant = dateTime.atZone(zone).toInstant();
+                if (!probe.format(Date.from(instant)).equals(formatter.format(instant)))
+                {
+                    return null;
+                }
+            }
+            return formatter;
+        }
+        catch (IllegalArgumentException | DateTimeException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * A formatter which can be used by several threads at once.
+     */
+    abstract static class SharedFormat
+    {
+        /**
+         * Formats an argument.
+         *
+         * @param out where to append the formatted argument
+         * @param arg the argument, not <code>null</code>
+         * @throws IOException if appending fails
+         * @throws IllegalArgumentException if the argument cannot be
+         * formatted
+         */
+        abstract void format(Appendable out, Object arg) throws IOException;
+
+        /**
+         * Formats an integer argument.
+         *
+         * @param out where to append the formatted argument
+         * @param arg the argument
+         * @throws IOException if appending fails
+         */
+        void formatLong(Appendable out, long arg) throws IOException
+        {
+            format(out, Long.valueOf(arg));
+        }
+
+        /**
+         * Formats a floating point argument.
+         *
+         * @param out where to append the formatted argument
+         * @param arg the argument
+         * @throws IOException if appending fails
+         */
+        void formatDouble(Appendable out, double arg) throws IOException
+        {
+            format(out, Double.valueOf(arg));
+        }
+    }
+
+    /**
+     * Shares a format which is not thread-safe by handing out clones.
+     */
+    static class PooledFormat extends SharedFormat
+    {
+        /** The format, only ever cloned. */
+        private final Format prototype;
+
+        /** Clones available for reuse. */
+        private final AtomicReferenceArray<Clone> spares =
+            new AtomicReferenceArray<Clone>(SPARES);
+
+        /**
+         * @param prototype the format to clone
+         */
+        PooledFormat(Format prototype)
+        {
+            this.prototype = prototype;
+        }
+
+        @Override
+        void format(Appendable out, Object arg) throws IOException
+        {
+            Clone clone = borrow();
+            try
+            {
+                clone.format.format(arg, clone.buffer, clone.position);
+                out.append(clone.buffer);
+            }
+            finally
+            {
+                release(clone);
+            }
+        }
+
+        /**
+         * Takes a clone out of the spares, or creates one if there is
+         * none.
+         *
+         * @return the clone
+         */
+        final Clone borrow()
+        {
+            for (int i = 0; i < SPARES; i++)
+            {
+                Clone clone = spares.getAndSet(i, null);
+                if (clone != null)
+                {
+                    return clone;
+                }
+            }
+            return new Clone((Format) prototype.clone());
+        }
+
+        /**
+         * Puts a clone back into the spares, unless they are full.
+         *
+         * @param clone the clone
+         */
+        final void release(Clone clone)
+        {
+            clone.buffer.setLength(0);
+            for (int i = 0; i < SPARES; i++)
+            {
+                if (spares.compareAndSet(i, null, clone))
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A clone of a format with a buffer to format into.
+     */
+    static final class Clone
+    {
+        /** The format. */
+        final Format format;
+
+        /** The buffer to format into. */
+        final StringBuffer buffer = new StringBuffer();
+
+        /** The field position required for formatting, ignored. */
+        final FieldPosition position = new FieldPosition(0);
+
+        /**
+         * @param format the format
+         */
+        Clone(Format format)
+        {
+            this.format = format;
+        }
+    }
+
+    /**
+     * Shares a <code>DecimalFormat</code>.  Integers are formatted
+     * without it if it only inserts grouping separators, as the default
+     * number format of most locales does.
+     */
+    static final class PooledNumberFormat extends PooledFormat
+    {
+        /** Whether integers can be formatted without the format. */
+        private final boolean plainIntegers;
+
+        /** The number of digits per group, or 0 for no grouping. */
+        private final int groupingSize;
+
+        /** The grouping separator. */
+        private final char groupingSeparator;
+
+        /** The prefix of negative numbers. */
+        private final char minusSign;
+
+        /**
+         * @param prototype the format to clone
+         */
+        PooledNumberFormat(DecimalFormat prototype)
+        {
+            super(prototype);
+            DecimalFormatSymbols symbols = prototype.getDecimalFormatSymbols();
+            plainIntegers = symbols.getZeroDigit() == '0'
+                && prototype.getPositivePrefix().isEmpty()
+                && prototype.getPositiveSuffix().isEmpty()
+                && prototype.getNegativePrefix().equals(String.valueOf(symbols.getMinusSign()))
+                && prototype.getNegativeSuffix().isEmpty()
+                && prototype.getMinimumIntegerDigits() <= 1
+                && prototype.getMaximumIntegerDigits() >= 19
+                && prototype.getMinimumFractionDigits() == 0
+                && prototype.getMultiplier() == 1
+                && !prototype.isDecimalSeparatorAlwaysShown();
+            groupingSize = prototype.isGroupingUsed() ? prototype.getGroupingSize() : 0;
+            groupingSeparator = symbols.getGroupingSeparator();
+            minusSign = symbols.getMinusSign();
+        }
+
+        @Override
+        void format(Appendable out, Object arg) throws IOException
+        {
+            if (arg instanceof Integer || arg instanceof Long
+                || arg instanceof Short || arg instanceof Byte)
+            {
+                formatLong(out, ((Number) arg).longValue());
+            }
+            else
+            {
+                super.format(out, arg);
+            }
+        }
+
+        @Override
+        void formatLong(Appendable out, long arg) throws IOException
+        {
+            if (!plainIntegers || arg == Long.MIN_VALUE)
+            {
+                Clone clone = borrow();
+                try
+                {
+                    ((NumberFormat) clone.format).format(arg, clone.buffer, clone.position);
+                    out.append(clone.buffer);
+                }
+                finally
+                {
+                    release(clone);
+                }
+                return;
+            }
+            long value = arg;
+            if (value < 0)
+            {
+                out.append(minusSign);
+                value = -value;
+            }
+            int digits = 1;
+            long divisor = 1;
+            while (value / divisor >= 10)
+            {
+                divisor *= 10;
+                digits++;
+            }
+            for (; digits > 0; digits--)
+            {
+                long digit = value / divisor;
+                out.append((char) ('0' + digit));
+                value -= digit * divisor;
+                divisor /= 10;
+                if (groupingSize > 0 && digits > 1 && (digits - 1) % groupingSize == 0)
+                {
+                    out.append(groupingSeparator);
+                }
+            }
+        }
+
+        @Override
+        void formatDouble(Appendable out, double arg) throws IOException
+        {
+            Clone clone = borrow();
+            try
+            {
+                ((NumberFormat) clone.format).format(arg, clone.buffer, clone.position);
+                out.append(clone.buffer);
+            }
+            finally
+            {
+                release(clone);
+            }
+        }
+    }
+
+    /**
+     * Shares an immutable <code>DateTimeFormatter</code> standing in
+     * for a <code>SimpleDateFormat</code>, which formats dates and
+     * numbers of milliseconds.
+     */
+    static final class TimeFormat extends SharedFormat
+    {
+        /**
+         * The first millisecond <code>java.util.TimeZone</code> knows
+         * the offsets of the time zones for, as it keeps no transitions
+         * before 1900.
+         */
+        private static final long HISTORY_START = Instant.parse("1900-01-02T00:00:00Z").toEpochMilli();
+
+        /**
+         * The last millisecond <code>java.util.TimeZone</code> knows
+         * the offsets of the time zones for, as it keeps no transitions
+         * after 2037 and continues with the last daylight saving rule.
+         */
+        private static final long HISTORY_END = Instant.parse("2036-12-31T00:00:00Z").toEpochMilli();
+
+        /** The formatter. */
+        private final DateTimeFormatter formatter;
+
+        /**
+         * The date format for the dates it formats differently: as
+         * Julian dates before the switch to the Gregorian calendar, and
+         * with other offsets than <code>java.time</code> outside the
+         * transitions <code>java.util.TimeZone</code> keeps.
+         */
+        private final PooledFormat other;
+
+        /** The first millisecond both format alike. */
+        private final long start;
+
+        /** The last millisecond both format alike. */
+        private final long end;
+
+        /**
+         * @param formatter the formatter
+         * @param format the date format it stands in for
+         */
+        TimeFormat(DateTimeFormatter formatter, SimpleDateFormat format)
+        {
+            this.formatter = formatter;
+            this.other = new PooledFormat(format);
+            ZoneRules rules = formatter.getZone().getRules();
+            long first = ((GregorianCalendar) format.getCalendar()).getGregorianChange().getTime();
+            if (!rules.isFixedOffset())
+            {
+                // local mean time before the first transition
+                List<ZoneOffsetTransition> transitions = rules.getTransitions();
+                first = Math.max(first, HISTORY_START);
+                if (!transitions.isEmpty())
+                {
+                    first = Math.max(first, transitions.get(0).getInstant().toEpochMilli());
+                }
+            }
+            this.start = first;
+            this.end = (rules.isFixedOffset() ? Long.MAX_VALUE : HISTORY_END);
+        }
+
+        @Override
+        void format(Appendable out, Object arg) throws IOException
+        {
+            if (arg instanceof Date)
+            {
+                formatLong(out, ((Date) arg).getTime());
+            }
+            else if (arg instanceof Number)
+            {
+                formatLong(out, ((Number) arg).longValue());
+            }
+            else
+            {
+                throw new IllegalArgumentException("Cannot format given Object as a Date");
+            }
+        }
+
+        @Override
+        void formatLong(Appendable out, long arg) throws IOException
+        {
+            if (arg < start || arg > end)
+            {
+                other.format(out, Long.valueOf(arg));
+            }
+            else
+            {
+                formatter.formatTo(Instant.ofEpochMilli(arg), out);
+            }
+        }
+    }
+}
@@ -20,18 +20,23 @@ package org.apache.fulcrum.localization;
  */
 
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.StringTokenizer;
 
 /**
  * Parses the HTTP <code>Accept-Language</code> header as per section
  * 14.4 of RFC 2068 (HTTP 1.1 header field definitions).
  *
+ * <p>
+ * The header is scanned in a single pass without splitting it into
+ * substrings.  Language tags are mapped to shared <code>Locale</code>
+ * instances, so parsing a header made of frequently seen tags does
+ * not create any new <code>Locale</code> objects.
+ * </p>
+ *
  * @author <a href="mailto:dlr@collab.net">Daniel Rall</a>
  * @version $Id$
  */
@@ -42,7 +47,7 @@ public class LocaleTokenizer
      * Separates elements of the <code>Accept-Language</code> HTTP
      * header.
      */
-    private static final String LOCALE_SEPARATOR = ",";
+    private static final char LOCALE_SEPARATOR = ',';
 
     /**
      * Separates locale from quality within elements.
@@ -56,9 +61,38 @@ public class LocaleTokenizer
     protected static final Float DEFAULT_QUALITY = 1.0f;
 
     /**
-     * The parsed locales.
+     * The number of slots of the shared table of canonical locales
+     * (a power of two).
+     */
+    private static final int CANONICAL_SLOTS = 512;
+
+    /**
+     * Shared table of canonical locales, indexed by the hash code of
+     * the language tag.  A slot is simply overwritten when another
+     * tag hashes to it.
+     */
+    private static final CanonicalLocale[] CANONICAL_LOCALES =
+        new CanonicalLocale[CANONICAL_SLOTS];
+
+    /**
+     * The parsed locales, sorted by quality in descending order.
+     */
+    private Locale[] locales = new Locale[4];
+
+    /**
+     * The qualities of the parsed locales.
+     */
+    private float[] qualities = new float[4];
+
+    /**
+     * The number of parsed locales.
      */
-    private ArrayList<AcceptLanguage> locales = new ArrayList<>(3);
+    private int count = 0;
+
+    /**
+     * The index of the next locale to return.
+     */
+    private int position = 0;
 
     /**
      * Parses the <code>Accept-Language</code> header.
@@ -68,53 +102,48 @@ public class LocaleTokenizer
      */
     public LocaleTokenizer(String header)
     {
-        StringTokenizer tok = new StringTokenizer(header, LOCALE_SEPARATOR);
-        while (tok.hasMoreTokens())
+        int length = header.length();
+        int index = 0;
+        while (index < length)
         {
-            AcceptLanguage acceptLang = new AcceptLanguage();
-            String element = tok.nextToken().trim();
-            int index;
+            // Language tag, up to a quality or the next element.
+            int start = skipWhitespace(header, index, length);
+            int end = start;
+            while (end < length
+                && header.charAt(end) != QUALITY_SEPARATOR
+                && header.charAt(end) != LOCALE_SEPARATOR)
+            {
+                end++;
+            }
+            index = end;
+            while (end > start && Character.isWhitespace(header.charAt(end - 1)))
+            {
+                end--;
+            }
 
-            // Record and cut off any quality value that comes after a
-            // semi-colon.
-            if ( (index = element.indexOf(QUALITY_SEPARATOR)) != -1 )
+            // Record any quality value that comes after a semi-colon.
+            float quality = DEFAULT_QUALITY;
+            if (index < length && header.charAt(index) == QUALITY_SEPARATOR)
             {
-                String q = element.substring(index);
-                element = element.substring(0, index);
-                if ( (index = q.indexOf('=')) != -1 )
+                int qualityEnd = header.indexOf(LOCALE_SEPARATOR, index);
+                if (qualityEnd == -1)
                 {
-                    try
-                    {
-                        acceptLang.quality =
-                            Float.valueOf(q.substring(index + 1));
-                    }
-                    catch (NumberFormatException useDefault)
-                    {
-                        // ignore
-                    }
+                    qualityEnd = length;
                 }
+                int equals = header.indexOf('=', index);
+                if (equals != -1 && equals < qualityEnd)
+                {
+                    quality = parseQuality(header, equals + 1, qualityEnd);
+                }
+                index = qualityEnd;
             }
 
-            element = element.trim();
-
-            // Create a Locale from the language.  A dash may separate the
-            // language from the country.
-            if ( (index = element.indexOf('-')) == -1 )
-            {
-                // No dash means no country.
-                acceptLang.locale = new Locale(element, "");
-            }
-            else
+            if (end > start)
             {
-                acceptLang.locale = new Locale(element.substring(0, index),
-                                               element.substring(index + 1));
+                add(canonicalLocale(header, start, end), quality);
             }
-
-            locales.add(acceptLang);
+            index++;
         }
-
-        // Sort by quality in descending order.
-        locales.sort(Collections.reverseOrder());
     }
 
     /**
@@ -122,7 +151,7 @@ public class LocaleTokenizer
      */
     public boolean hasNext()
     {
-        return !locales.isEmpty();
+        return position < count;
     }
 
     /**
@@ -134,11 +163,11 @@ public class LocaleTokenizer
      */
     public Object next()
     {
-        if (locales.isEmpty())
+        if (position >= count)
         {
             throw new NoSuchElementException();
         }
-        return (locales.remove(0)).locale;
+        return locales[position++];
     }
 
     /**
@@ -151,10 +180,183 @@ public class LocaleTokenizer
                                                 " does not support remove()");
     }
 
+    /**
+     * Inserts a locale, keeping the list sorted by quality in
+     * descending order.  Locales of equal quality keep the order in
+     * which they appear in the header.
+     *
+     * @param locale The locale.
+     * @param quality The quality of the locale.
+     */
+    private void add(Locale locale, float quality)
+    {
+        if (count == locales.length)
+        {
+            locales = Arrays.copyOf(locales, count * 2);
+            qualities = Arrays.copyOf(qualities, count * 2);
+        }
+        int i = count++;
+        while (i > 0 && qualities[i - 1] < quality)
+        {
+            locales[i] = locales[i - 1];
+            qualities[i] = qualities[i - 1];
+            i--;
+        }
+        locales[i] = locale;
+        qualities[i] = quality;
+    }
+
+    /**
+     * @param header The header.
+     * @param index The index to start at.
+     * @param end The index to stop at.
+     * @return The index of the first non-whitespace character.
+     */
+    private static int skipWhitespace(String header, int index, int end)
+    {
+        while (index < end && Character.isWhitespace(header.charAt(index)))
+        {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Parses a quality value such as <code>0.8</code> without creating
+     * any objects.
+     *
+     * @param header The header.
+     * @param start The index of the first character of the value.
+     * @param end The index after the last character of the value.
+     * @return The quality, or the default quality if the value cannot
+     * be parsed.
+     */
+    private static float parseQuality(String header, int start, int end)
+    {
+        start = skipWhitespace(header, start, end);
+        while (end > start && Character.isWhitespace(header.charAt(end - 1)))
+        {
+            end--;
+        }
+        if (start == end)
+        {
+            return DEFAULT_QUALITY;
+        }
+
+        float value = 0f;
+        float scale = 0f;
+        for (int i = start; i < end; i++)
+        {
+            char c = header.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                if (scale == 0f)
+                {
+                    value = value * 10f + (c - '0');
+                }
+                else
+                {
+                    value += (c - '0') * scale;
+                    scale /= 10f;
+                }
+            }
+            else if (c == '.' && scale == 0f)
+            {
+                scale = 0.1f;
+            }
+            else
+            {
+                return DEFAULT_QUALITY;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Retrieves the shared <code>Locale</code> for a language tag,
+     * creating it if it is not in the table of canonical locales.
+     *
+     * @param header The header.
+     * @param start The index of the first character of the tag.
+     * @param end The index after the last character of the tag.
+     * @return The locale.
+     */
+    private static Locale canonicalLocale(String header, int start, int end)
+    {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+        {
+            hash = 31 * hash + Character.toLowerCase(header.charAt(i));
+        }
+        int slot = (hash ^ (hash >>> 16)) & (CANONICAL_SLOTS - 1);
+
+        CanonicalLocale canonical = CANONICAL_LOCALES[slot];
+        int length = end - start;
+        if (canonical != null
+            && canonical.tag.length() == length
+            && canonical.tag.regionMatches(true, 0, header, start, length))
+        {
+            return canonical.locale;
+        }
+
+        String tag = header.substring(start, end);
+        Locale locale = createLocale(tag);
+        CANONICAL_LOCALES[slot] = new CanonicalLocale(tag, locale);
+        return locale;
+    }
+
+    /**
+     * Creates a <code>Locale</code> from a language tag.  Well-formed
+     * BCP 47 tags such as <code>zh-Hant-TW</code> are parsed with
+     * {@link Locale#forLanguageTag(String)}, other tags are split into
+     * language and country at the first dash.
+     *
+     * @param tag The language tag.
+     * @return The locale.
+     */
+    private static Locale createLocale(String tag)
+    {
+        Locale locale = Locale.forLanguageTag(tag);
+        if (!locale.getLanguage().isEmpty())
+        {
+            return locale;
+        }
+
+        // A dash may separate the language from the country.
+        int index = tag.indexOf('-');
+        if (index == -1)
+        {
+            // No dash means no country.
+            return new Locale(tag, "");
+        }
+        return new Locale(tag.substring(0, index), tag.substring(index + 1));
+    }
+
+    /**
+     * Entry of the table of canonical locales.
+     */
+    private static final class CanonicalLocale
+    {
+        /** The language tag as it appeared in a header. */
+        final String tag;
+
+        /** The locale created from the tag. */
+        final Locale locale;
+
+        CanonicalLocale(String tag, Locale locale)
+        {
+            this.tag = tag;
+            this.locale = locale;
+        }
+    }
+
     /**
      * Struct representing an element of the HTTP
      * <code>Accept-Language</code> header.
+     *
+     * @deprecated The tokenizer no longer creates objects per element.
      */
+    @Deprecated
     protected static class AcceptLanguage implements Comparable<Object>
     {
         /**
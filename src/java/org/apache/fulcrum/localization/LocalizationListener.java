@@ -0,0 +1,89 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Locale;
+
+/**
+ * Receives notifications about the work done by the localization
+ * service.  Listeners are called synchronously on the hot paths of
+ * the service, so implementations must be thread-safe and fast.
+ *
+ * @see SimpleLocalizationServiceImpl#addLocalizationListener(LocalizationListener)
+ * @version $Id$
+ */
+public interface LocalizationListener
+{
+    /**
+     * Called when a text was found.
+     *
+     * @param bundleName Name of the requested bundle.
+     * @param locale The requested locale.
+     * @param key Name of the text.
+     * @param fallbackDepth <code>0</code> if the text was found in the
+     * requested bundle, <code>n</code> if it was found in the n-th
+     * default bundle searched after it, or <code>-1</code> if this is
+     * not known because the key index was used.
+     */
+    default void lookupHit(String bundleName, Locale locale, String key, int fallbackDepth)
+    {
+        // nothing to do
+    }
+
+    /**
+     * Called when a text was not found in the requested bundle nor in
+     * any of the default bundles.
+     *
+     * @param bundleName Name of the requested bundle.
+     * @param locale The requested locale.
+     * @param key Name of the text.
+     */
+    default void lookupMiss(String bundleName, Locale locale, String key)
+    {
+        // nothing to do
+    }
+
+    /**
+     * Called when a bundle was loaded into the cache.
+     *
+     * @param bundleName Name of the bundle.
+     * @param locale The requested locale.
+     * @param nanos The time taken in nanoseconds.
+     * @param found <code>false</code> if no bundle could be found.
+     */
+    default void bundleLoaded(String bundleName, Locale locale, long nanos, boolean found)
+    {
+        // nothing to do
+    }
+
+    /**
+     * Called when a text was formatted.
+     *
+     * @param bundleName Name of the bundle.
+     * @param locale The locale.
+     * @param key Name of the text.
+     * @param nanos The time taken in nanoseconds, including the
+     * lookup of the text.
+     */
+    default void messageFormatted(String bundleName, Locale locale, String key, long nanos)
+    {
+        // nothing to do
+    }
+}
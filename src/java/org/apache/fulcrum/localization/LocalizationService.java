@@ -22,6 +22,7 @@ package org.apache.fulcrum.localization;
 
 
 import java.util.Locale;
+import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -113,4 +114,45 @@ public interface LocalizationService extends SimpleLocalizationService
      * language and country defaults.
      */
     Locale getLocale(String languageHeader);
+
+    /**
+     * Negotiates the locale to use for a bundle.  The
+     * <code>Accept-Language</code> header is parsed into a priority
+     * list of language ranges which is matched against the locales
+     * the bundle is actually available in, following the lookup
+     * scheme of RFC 4647.
+     *
+     * @param languageHeader The language header (i.e. <code>fr-CH,
+     * de;q=0.9</code>), or <code>null</code> for the locale
+     * corresponding to the default language and country.
+     * @param bundleName Name of the bundle (or <code>null</code> for
+     * the default bundle).
+     * @return The best available locale, or a locale corresponding to
+     * the language and country defaults if none matches.
+     */
+    default Locale negotiateLocale(String languageHeader, String bundleName)
+    {
+        if (languageHeader != null)
+        {
+            // the first language the bundle is available in
+            LocaleTokenizer tok = new LocaleTokenizer(languageHeader);
+            while (tok.hasNext())
+            {
+                Locale requested = (Locale) tok.next();
+                try
+                {
+                    Locale available = getBundle(bundleName, requested).getLocale();
+                    if (available != null && available.getLanguage().equals(requested.getLanguage()))
+                    {
+                        return available;
+                    }
+                }
+                catch (MissingResourceException e)
+                {
+                    // try the next language
+                }
+            }
+        }
+        return getDefaultLocale();
+    }
 }
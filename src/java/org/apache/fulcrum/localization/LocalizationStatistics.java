@@ -0,0 +1,244 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Collects statistics about the localization service.  All counters
+ * are striped <code>LongAdder</code>s, so concurrent updates do not
+ * contend.  The number of distinct bundles, locales and keys tracked
+ * is limited; further ones are only counted in the totals.
+ *
+ * @version $Id$
+ */
+public class LocalizationStatistics
+    implements LocalizationListener, LocalizationStatisticsMXBean
+{
+    /** The maximum number of entries in each of the detail maps. */
+    private static final int MAX_TRACKED = 1000;
+
+    /** The number of fallback depths counted separately. */
+    private static final int MAX_DEPTH = 8;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final Map<CacheKey, LongAdder> hitsByBundle =
+        new ConcurrentHashMap<CacheKey, LongAdder>();
+
+    private final Map<CacheKey, LongAdder> missesByBundle =
+        new ConcurrentHashMap<CacheKey, LongAdder>();
+
+    private final Map<CacheKey, LongAdder> missingKeys =
+        new ConcurrentHashMap<CacheKey, LongAdder>();
+
+    private final LongAdder[] fallbackDepths = new LongAdder[MAX_DEPTH + 1];
+
+    private final LongAdder bundleLoads = new LongAdder();
+
+    private final LongAdder bundleLoadNanos = new LongAdder();
+
+    private final LongAdder formats = new LongAdder();
+
+    private final LongAdder formatNanos = new LongAdder();
+
+    /** Supplies the number of cached bundles. */
+    private final IntSupplier cacheSize;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param cacheSize Supplies the number of cached bundles.
+     */
+    public LocalizationStatistics(IntSupplier cacheSize)
+    {
+        this.cacheSize = cacheSize;
+        for (int i = 0; i < fallbackDepths.length; i++)
+        {
+            fallbackDepths[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void lookupHit(String bundleName, Locale locale, String key, int fallbackDepth)
+    {
+        hits.increment();
+        increment(hitsByBundle, new CacheKey(bundleName, locale, null));
+        if (fallbackDepth >= 0)
+        {
+            fallbackDepths[Math.min(fallbackDepth, MAX_DEPTH)].increment();
+        }
+    }
+
+    @Override
+    public void lookupMiss(String bundleName, Locale locale, String key)
+    {
+        misses.increment();
+        increment(missesByBundle, new CacheKey(bundleName, locale, null));
+        increment(missingKeys, new CacheKey(bundleName, null, key));
+    }
+
+    @Override
+    public void bundleLoaded(String bundleName, Locale locale, long nanos, boolean found)
+    {
+        bundleLoads.increment();
+        bundleLoadNanos.add(nanos);
+    }
+
+    @Override
+    public void messageFormatted(String bundleName, Locale locale, String key, long nanos)
+    {
+        formats.increment();
+        formatNanos.add(nanos);
+    }
+
+    @Override
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    @Override
+    public Map<String, Long> getHitsByBundle()
+    {
+        return toMap(hitsByBundle);
+    }
+
+    @Override
+    public Map<String, Long> getMissesByBundle()
+    {
+        return toMap(missesByBundle);
+    }
+
+    @Override
+    public Map<String, Long> getMissingKeys()
+    {
+        return toMap(missingKeys);
+    }
+
+    @Override
+    public long[] getFallbackDepths()
+    {
+        long[] depths = new long[fallbackDepths.length];
+        for (int i = 0; i < depths.length; i++)
+        {
+            depths[i] = fallbackDepths[i].sum();
+        }
+        return depths;
+    }
+
+    @Override
+    public long getBundleLoads()
+    {
+        return bundleLoads.sum();
+    }
+
+    @Override
+    public double getAverageBundleLoadMillis()
+    {
+        long loads = bundleLoads.sum();
+        return (loads == 0 ? 0 : bundleLoadNanos.sum() / 1e6 / loads);
+    }
+
+    @Override
+    public int getCachedBundles()
+    {
+        return cacheSize.getAsInt();
+    }
+
+    @Override
+    public long getFormats()
+    {
+        return formats.sum();
+    }
+
+    @Override
+    public double getAverageFormatMicros()
+    {
+        long count = formats.sum();
+        return (count == 0 ? 0 : formatNanos.sum() / 1e3 / count);
+    }
+
+    @Override
+    public void reset()
+    {
+        hits.reset();
+        misses.reset();
+        hitsByBundle.clear();
+        missesByBundle.clear();
+        missingKeys.clear();
+        for (LongAdder depth : fallbackDepths)
+        {
+            depth.reset();
+        }
+        bundleLoads.reset();
+        bundleLoadNanos.reset();
+        formats.reset();
+        formatNanos.reset();
+    }
+
+    /**
+     * Increments the counter for a key, unless the map is full and
+     * does not hold the key yet.
+     *
+     * @param counters The counters.
+     * @param key The key.
+     */
+    private static void increment(Map<CacheKey, LongAdder> counters, CacheKey key)
+    {
+        LongAdder counter = counters.get(key);
+        if (counter == null)
+        {
+            if (counters.size() >= MAX_TRACKED)
+            {
+                return;
+            }
+            counter = counters.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * @param counters The counters.
+     * @return A sorted snapshot of the counters.
+     */
+    private static Map<String, Long> toMap(Map<CacheKey, LongAdder> counters)
+    {
+        Map<String, Long> map = new TreeMap<String, Long>();
+        for (Map.Entry<CacheKey, LongAdder> entry : counters.entrySet())
+        {
+            map.put(entry.getKey().toString(), entry.getValue().sum());
+        }
+        return map;
+    }
+}
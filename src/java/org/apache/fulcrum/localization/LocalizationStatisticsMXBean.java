@@ -0,0 +1,92 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Map;
+
+/**
+ * Management interface of the statistics collected by the
+ * localization service.
+ *
+ * @version $Id$
+ */
+public interface LocalizationStatisticsMXBean
+{
+    /**
+     * @return The number of texts found.
+     */
+    long getHits();
+
+    /**
+     * @return The number of texts not found.
+     */
+    long getMisses();
+
+    /**
+     * @return The number of texts found per bundle and locale.
+     */
+    Map<String, Long> getHitsByBundle();
+
+    /**
+     * @return The number of texts not found per bundle and locale.
+     */
+    Map<String, Long> getMissesByBundle();
+
+    /**
+     * @return The number of lookups per missing bundle and key.
+     */
+    Map<String, Long> getMissingKeys();
+
+    /**
+     * @return The number of texts found per fallback depth, the last
+     * element counting all deeper fallbacks.
+     */
+    long[] getFallbackDepths();
+
+    /**
+     * @return The number of bundles loaded into the cache.
+     */
+    long getBundleLoads();
+
+    /**
+     * @return The average time to load a bundle in milliseconds.
+     */
+    double getAverageBundleLoadMillis();
+
+    /**
+     * @return The number of cached bundles.
+     */
+    int getCachedBundles();
+
+    /**
+     * @return The number of formatted texts.
+     */
+    long getFormats();
+
+    /**
+     * @return The average time to format a text in microseconds.
+     */
+    double getAverageFormatMicros();
+
+    /**
+     * Resets all counters.
+     */
+    void reset();
+}
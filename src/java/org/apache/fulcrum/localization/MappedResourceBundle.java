@@ -0,0 +1,294 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A resource bundle reading its texts from a catalog file compiled by
+ * {@link CatalogCompiler}.  The file is memory-mapped rather than read,
+ * so opening a bundle costs next to nothing, the texts stay out of the
+ * heap until they are used, and processes on the same host share the
+ * pages of the file.
+ *
+ * <p>
+ * A catalog file holds the texts of one bundle for one locale, without
+ * those of its parents.  All numbers are 32 bit big-endian integers:
+ * </p>
+ *
+ * <ul>
+ * <li>the magic number {@link #MAGIC} and the number of entries,</li>
+ * <li>one index entry per text, sorted by the unsigned UTF-8 bytes of
+ * the key: the offset and length of the key, then the offset and
+ * length of the text,</li>
+ * <li>the UTF-8 encoded keys and texts the offsets point to.</li>
+ * </ul>
+ *
+ * <p>
+ * Texts are decoded on first use and kept, keys are decoded only to
+ * list them.  Catalog files must be replaced, not rewritten in place,
+ * while they are in use.
+ * </p>
+ *
+ * @version $Id$
+ */
+final class MappedResourceBundle extends ResourceBundle
+{
+    /** The first four bytes of a catalog file, "FLB1". */
+    static final int MAGIC = 0x464C4231;
+
+    /** The size of the header in bytes. */
+    static final int HEADER_SIZE = 8;
+
+    /** The size of an index entry in bytes. */
+    static final int ENTRY_SIZE = 16;
+
+    /** The catalog, only read with absolute gets, so it can be shared. */
+    private final ByteBuffer catalog;
+
+    /** The number of texts. */
+    private final int count;
+
+    /** The texts decoded so far, indexed by entry. */
+    private final AtomicReferenceArray<String> values;
+
+    /** The keys, decoded on first use. */
+    private volatile Set<String> keys;
+
+    /**
+     * Creates a bundle reading a catalog.  The index is checked once,
+     * so a truncated or corrupt catalog fails here rather than on a
+     * lookup.
+     *
+     * @param catalog The catalog.
+     * @throws IOException if the catalog is not valid
+     */
+    MappedResourceBundle(ByteBuffer catalog) throws IOException
+    {
+        if (catalog.limit() < HEADER_SIZE || catalog.getInt(0) != MAGIC)
+        {
+            throw new IOException("Not a message catalog");
+        }
+        this.catalog = catalog;
+        this.count = catalog.getInt(4);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > catalog.limit())
+        {
+            throw new IOException("Truncated message catalog");
+        }
+        for (int entry = 0; entry < count; entry++)
+        {
+            int index = HEADER_SIZE + entry * ENTRY_SIZE;
+            if (!isInside(catalog, index) || !isInside(catalog, index + 8))
+            {
+                throw new IOException("Corrupt message catalog entry " + entry);
+            }
+        }
+        this.values = new AtomicReferenceArray<String>(count);
+    }
+
+    /**
+     * Checks that the offset and length at a position of the index
+     * describe a range of the catalog.
+     *
+     * @param catalog The catalog.
+     * @param index The position of the offset, followed by the length.
+     * @return Whether the range is inside the catalog.
+     */
+    private static boolean isInside(ByteBuffer catalog, int index)
+    {
+        int offset = catalog.getInt(index);
+        int length = catalog.getInt(index + 4);
+        return offset >= 0 && length >= 0 && (long) offset + length <= catalog.limit();
+    }
+
+    /**
+     * Maps a catalog file into memory.
+     *
+     * @param file The catalog file.
+     * @return The bundle reading the file.
+     * @throws IOException if the file cannot be mapped or is not a
+     * valid catalog
+     */
+    static MappedResourceBundle open(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            try
+            {
+                return new MappedResourceBundle(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+            catch (IOException e)
+            {
+                throw new IOException(e.getMessage() + ": " + file, e);
+            }
+        }
+    }
+
+    /**
+     * @see java.util.ResourceBundle#handleGetObject(java.lang.String)
+     */
+    @Override
+    protected Object handleGetObject(String key)
+    {
+        int entry = find(key);
+        if (entry < 0)
+        {
+            return null;
+        }
+        String value = values.get(entry);
+        if (value == null)
+        {
+            int index = HEADER_SIZE + entry * ENTRY_SIZE;
+            value = decode(catalog.getInt(index + 8), catalog.getInt(index + 12));
+            values.set(entry, value);
+        }
+        return value;
+    }
+
+    /**
+     * @see java.util.ResourceBundle#containsKey(java.lang.String)
+     */
+    @Override
+    public boolean containsKey(String key)
+    {
+        if (key == null)
+        {
+            throw new NullPointerException();
+        }
+        return find(key) >= 0 || (parent != null && parent.containsKey(key));
+    }
+
+    /**
+     * @see java.util.ResourceBundle#getKeys()
+     */
+    @Override
+    public Enumeration<String> getKeys()
+    {
+        Set<String> all = new LinkedHashSet<String>(handleKeySet());
+        if (parent != null)
+        {
+            all.addAll(parent.keySet());
+        }
+        return Collections.enumeration(all);
+    }
+
+    /**
+     * @see java.util.ResourceBundle#handleKeySet()
+     */
+    @Override
+    protected Set<String> handleKeySet()
+    {
+        Set<String> result = keys;
+        if (result == null)
+        {
+            Set<String> decoded = new LinkedHashSet<String>(count * 4 / 3 + 1);
+            for (int entry = 0; entry < count; entry++)
+            {
+                int index = HEADER_SIZE + entry * ENTRY_SIZE;
+                decoded.add(decode(catalog.getInt(index), catalog.getInt(index + 4)));
+            }
+            result = Collections.unmodifiableSet(decoded);
+            keys = result;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the index entry of a key by binary search.
+     *
+     * @param key The key.
+     * @return The number of the entry, or <code>-1</code> if the key is
+     * not in the catalog.
+     */
+    private int find(String key)
+    {
+        byte[] utf8 = key.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int index = HEADER_SIZE + mid * ENTRY_SIZE;
+            int cmp = compare(catalog.getInt(index), catalog.getInt(index + 4), utf8);
+            if (cmp < 0)
+            {
+                low = mid + 1;
+            }
+            else if (cmp > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a key in the catalog with a key to look up.
+     *
+     * @param offset The offset of the key in the catalog.
+     * @param length The length of the key in the catalog.
+     * @param utf8 The key to look up.
+     * @return A negative number, zero or a positive number if the key
+     * in the catalog sorts before, equal to or after the other one.
+     */
+    private int compare(int offset, int length, byte[] utf8)
+    {
+        int n = Math.min(length, utf8.length);
+        for (int i = 0; i < n; i++)
+        {
+            int cmp = (catalog.get(offset + i) & 0xFF) - (utf8[i] & 0xFF);
+            if (cmp != 0)
+            {
+                return cmp;
+            }
+        }
+        return length - utf8.length;
+    }
+
+    /**
+     * Decodes a string from the catalog.
+     *
+     * @param offset The offset of the string.
+     * @param length The length of the string in bytes.
+     * @return The string.
+     */
+    private String decode(int offset, int length)
+    {
+        byte[] utf8 = new byte[length];
+        catalog.get(offset, utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,215 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * A reusable list of arguments for formatting a message, which keeps
+ * <code>long</code> and <code>double</code> arguments unboxed.
+ *
+ * <p>
+ * An instance is meant to be reused by one thread for many messages,
+ * e.g. held in a field of a renderer:
+ * </p>
+ * <pre>
+ * args.clear().add(count).add(userName);
+ * service.formatTo(out, bundleName, locale, "greeting", args);
+ * </pre>
+ *
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ *
+ * @see SimpleLocalizationService#formatTo(StringBuilder, String, java.util.Locale, String, MessageArguments)
+ * @version $Id$
+ */
+public final class MessageArguments
+{
+    /** Marks an argument held in {@link #objects}. */
+    private static final byte OBJECT = 0;
+
+    /** Marks an argument held in {@link #primitives} as a long. */
+    private static final byte LONG = 1;
+
+    /** Marks an argument held in {@link #primitives} as double bits. */
+    private static final byte DOUBLE = 2;
+
+    /** The kind of each argument. */
+    private byte[] kinds = new byte[4];
+
+    /** The primitive arguments. */
+    private long[] primitives = new long[4];
+
+    /** The object arguments. */
+    private Object[] objects = new Object[4];
+
+    /** The number of arguments. */
+    private int size = 0;
+
+    /**
+     * Removes all arguments.
+     *
+     * @return This list.
+     */
+    public MessageArguments clear()
+    {
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+        return this;
+    }
+
+    /**
+     * Adds an integral argument.
+     *
+     * @param arg The argument.
+     * @return This list.
+     */
+    public MessageArguments add(long arg)
+    {
+        int index = next(LONG);
+        primitives[index] = arg;
+        return this;
+    }
+
+    /**
+     * Adds a floating point argument.
+     *
+     * @param arg The argument.
+     * @return This list.
+     */
+    public MessageArguments add(double arg)
+    {
+        int index = next(DOUBLE);
+        primitives[index] = Double.doubleToRawLongBits(arg);
+        return this;
+    }
+
+    /**
+     * Adds any other argument.
+     *
+     * @param arg The argument.
+     * @return This list.
+     */
+    public MessageArguments add(Object arg)
+    {
+        int index = next(OBJECT);
+        objects[index] = arg;
+        return this;
+    }
+
+    /**
+     * @return The number of arguments.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Copies the arguments into an array, boxing primitive ones.
+     *
+     * @return The arguments.
+     */
+    public Object[] toArray()
+    {
+        Object[] result = new Object[size];
+        for (int i = 0; i < size; i++)
+        {
+            if (kinds[i] == LONG)
+            {
+                result[i] = Long.valueOf(primitives[i]);
+            }
+            else if (kinds[i] == DOUBLE)
+            {
+                result[i] = Double.valueOf(getDouble(i));
+            }
+            else
+            {
+                result[i] = objects[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param index The index of an argument.
+     * @return Whether the argument was added as a <code>long</code>.
+     */
+    boolean isLong(int index)
+    {
+        return kinds[index] == LONG;
+    }
+
+    /**
+     * @param index The index of an argument.
+     * @return Whether the argument was added as a <code>double</code>.
+     */
+    boolean isDouble(int index)
+    {
+        return kinds[index] == DOUBLE;
+    }
+
+    /**
+     * @param index The index of an argument added as a <code>long</code>.
+     * @return The argument.
+     */
+    long getLong(int index)
+    {
+        return primitives[index];
+    }
+
+    /**
+     * @param index The index of an argument added as a <code>double</code>.
+     * @return The argument.
+     */
+    double getDouble(int index)
+    {
+        return Double.longBitsToDouble(primitives[index]);
+    }
+
+    /**
+     * @param index The index of an argument added as an object.
+     * @return The argument.
+     */
+    Object getObject(int index)
+    {
+        return objects[index];
+    }
+
+    /**
+     * Reserves the slot for the next argument.
+     *
+     * @param kind The kind of the argument.
+     * @return The index of the argument.
+     */
+    private int next(byte kind)
+    {
+        if (size == kinds.length)
+        {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            primitives = Arrays.copyOf(primitives, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+        }
+        kinds[size] = kind;
+        return size++;
+    }
+}
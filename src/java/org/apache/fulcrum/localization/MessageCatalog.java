@@ -0,0 +1,340 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * All texts of a bundle for one locale, with the default bundles
+ * merged in, serialized once for sending to clients such as browser
+ * applications.
+ *
+ * <p>
+ * The catalog is available in two encodings, see {@link Format}.  Both
+ * are built when the catalog is created and never change, so they can
+ * be written out as they are, e.g. by a servlet, together with the
+ * entity tag of the encoding for conditional requests.
+ * </p>
+ *
+ * @version $Id$
+ */
+public final class MessageCatalog
+{
+    /** The first four bytes of the binary encoding, "FLC1". */
+    public static final int BINARY_MAGIC = 0x464C4331;
+
+    /**
+     * The encodings of a catalog.
+     */
+    public enum Format
+    {
+        /**
+         * A UTF-8 encoded JSON object mapping the keys to the texts,
+         * sorted by key.
+         */
+        JSON("application/json; charset=UTF-8"),
+
+        /**
+         * The magic number {@link MessageCatalog#BINARY_MAGIC} and the
+         * number of entries as 32 bit big-endian integers, followed by
+         * the entries sorted by key.  Each entry is the key and the
+         * text, each written as a 32 bit big-endian length followed by
+         * that many bytes of UTF-8.
+         */
+        BINARY("application/octet-stream");
+
+        /** The MIME type of the encoding. */
+        private final String contentType;
+
+        Format(String contentType)
+        {
+            this.contentType = contentType;
+        }
+
+        /**
+         * @return The MIME type of the encoding.
+         */
+        public String getContentType()
+        {
+            return contentType;
+        }
+    }
+
+    /** The name of the bundle. */
+    private final String bundleName;
+
+    /** The locale of the texts. */
+    private final Locale locale;
+
+    /** The number of texts. */
+    private final int size;
+
+    /** The encodings, indexed by format ordinal. */
+    private final byte[][] content;
+
+    /** The entity tags, indexed by format ordinal. */
+    private final String[] etags;
+
+    /**
+     * Serializes texts into a catalog.  The texts are copied, later
+     * changes to the map do not affect the catalog.
+     *
+     * @param bundleName The name of the bundle.
+     * @param locale The locale of the texts.
+     * @param texts The texts keyed by name.
+     */
+    public MessageCatalog(String bundleName, Locale locale, SortedMap<String, String> texts)
+    {
+        this.bundleName = bundleName;
+        this.locale = locale;
+        this.size = texts.size();
+        this.content = new byte[][] { toJson(texts), toBinary(texts) };
+        this.etags = new String[content.length];
+        for (int i = 0; i < content.length; i++)
+        {
+            etags[i] = '"' + hash(content[i]) + '"';
+        }
+    }
+
+    /**
+     * @return The name of the bundle.
+     */
+    public String getBundleName()
+    {
+        return bundleName;
+    }
+
+    /**
+     * @return The locale of the texts.
+     */
+    public Locale getLocale()
+    {
+        return locale;
+    }
+
+    /**
+     * @return The number of texts.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param format The encoding.
+     * @return The length of the encoded catalog in bytes.
+     */
+    public int getLength(Format format)
+    {
+        return content[format.ordinal()].length;
+    }
+
+    /**
+     * Retrieves the entity tag of an encoding, a quoted hex SHA-256
+     * hash of the encoded catalog.  It changes only if the encoded
+     * catalog changes, e.g. after a reload.
+     *
+     * @param format The encoding.
+     * @return The entity tag, including the quotes.
+     */
+    public String getETag(Format format)
+    {
+        return etags[format.ordinal()];
+    }
+
+    /**
+     * Provides the encoded catalog without copying it.
+     *
+     * @param format The encoding.
+     * @return A read-only buffer positioned at the start of the
+     * catalog.
+     */
+    public ByteBuffer asByteBuffer(Format format)
+    {
+        return ByteBuffer.wrap(content[format.ordinal()]).asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the encoded catalog.
+     *
+     * @param format The encoding.
+     * @param out The stream to write to, which is not closed.
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Format format, OutputStream out) throws IOException
+    {
+        out.write(content[format.ordinal()]);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "MessageCatalog[" + bundleName + ", " + locale + ", " + size + " texts]";
+    }
+
+    /**
+     * Encodes texts as JSON.
+     *
+     * @param texts The texts keyed by name.
+     * @return The UTF-8 bytes.
+     */
+    private static byte[] toJson(SortedMap<String, String> texts)
+    {
+        StringBuilder json = new StringBuilder(texts.size() * 32 + 2);
+        json.append('{');
+        for (Map.Entry<String, String> entry : texts.entrySet())
+        {
+            if (json.length() > 1)
+            {
+                json.append(',');
+            }
+            appendJsonString(json, entry.getKey());
+            json.append(':');
+            appendJsonString(json, entry.getValue());
+        }
+        json.append('}');
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends a quoted JSON string.  Besides the characters JSON
+     * requires to be escaped, the line and paragraph separators are
+     * escaped, so the result is valid JavaScript, too.
+     *
+     * @param json The JSON built so far.
+     * @param s The string.
+     */
+    private static void appendJsonString(StringBuilder json, String s)
+    {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029')
+                    {
+                        json.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Encodes texts in the binary format.
+     *
+     * @param texts The texts keyed by name.
+     * @return The bytes.
+     */
+    private static byte[] toBinary(SortedMap<String, String> texts)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(texts.size() * 32 + 8);
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(texts.size());
+            for (Map.Entry<String, String> entry : texts.entrySet())
+            {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+        catch (IOException e)
+        {
+            // Cannot happen when writing to memory.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a string as its length followed by its UTF-8 bytes.
+     *
+     * @param out The stream to write to.
+     * @param s The string.
+     * @throws IOException if writing fails
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    /**
+     * Hashes bytes.
+     *
+     * @param bytes The bytes.
+     * @return The hex SHA-256 hash.
+     */
+    private static String hash(byte[] bytes)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+            {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                   .append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform supports SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
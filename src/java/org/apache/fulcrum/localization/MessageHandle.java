@@ -0,0 +1,320 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.Optional;
+
+/**
+ * A message resolved once from a bundle name and key, to be looked up
+ * and formatted repeatedly, e.g. from a compiled template.
+ *
+ * <p>
+ * The handle remembers the text and the parsed format per locale, so
+ * after the first call for a locale neither the bundle name nor the
+ * key has to be hashed again.  Reloading bundles invalidates the
+ * remembered values.  Calls served from the handle are not reported
+ * to {@link LocalizationListener}s.  With other implementations of
+ * {@link SimpleLocalizationService} than the one of this package, the
+ * handle passes every call on to the service.
+ * </p>
+ *
+ * <p>Instances are thread-safe.</p>
+ *
+ * @version $Id$
+ */
+public final class MessageHandle
+{
+    /** The maximum number of locales remembered per handle. */
+    private static final int MAX_LOCALES = 16;
+
+    /** The initial, empty list of locales. */
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    /** The value to format with if no arguments are given. */
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /** The service to resolve the message with. */
+    private final SimpleLocalizationService service;
+
+    /**
+     * The service if the handle remembers the values resolved with it,
+     * or <code>null</code> to pass every call on to the service.
+     */
+    private final SimpleLocalizationServiceImpl resolver;
+
+    /** The name of the bundle to look in first. */
+    private final String bundleName;
+
+    /** The key of the message. */
+    private final String key;
+
+    /**
+     * The values resolved per locale.  The array is replaced on every
+     * change, so lookups read it without locking.
+     */
+    private volatile Entry[] entries = NO_ENTRIES;
+
+    /**
+     * Creates a handle.
+     *
+     * @param service The service to resolve the message with.
+     * @param bundleName The name of the bundle to look in first.
+     * @param key The key of the message.
+     */
+    public MessageHandle(SimpleLocalizationService service, String bundleName, String key)
+    {
+        this.service = service;
+        this.resolver = (service instanceof SimpleLocalizationServiceImpl
+            ? (SimpleLocalizationServiceImpl) service : null);
+        this.bundleName = bundleName;
+        this.key = key;
+    }
+
+    /**
+     * @return The name of the bundle to look in first.
+     */
+    public String getBundleName()
+    {
+        return bundleName;
+    }
+
+    /**
+     * @return The key of the message.
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * Looks up the message text.
+     *
+     * @param locale Locale to get text for (or <code>null</code> for
+     * the default locale).
+     * @return Localized text.
+     * @throws MissingResourceException if the message is not found
+     * @see SimpleLocalizationService#getString(String, Locale, String)
+     */
+    public String get(Locale locale)
+    {
+        if (resolver == null)
+        {
+            return service.getString(bundleName, locale, key);
+        }
+        return getEntry(locale).value();
+    }
+
+    /**
+     * Looks up the message text, reporting a missing message with an
+     * empty result.
+     *
+     * @param locale Locale to get text for (or <code>null</code> for
+     * the default locale).
+     * @return Localized text, or an empty <code>Optional</code> if none
+     * was found.
+     * @see SimpleLocalizationService#tryGetString(String, Locale, String)
+     */
+    public Optional<String> tryGet(Locale locale)
+    {
+        if (resolver == null)
+        {
+            return service.tryGetString(bundleName, locale, key);
+        }
+        return Optional.ofNullable(getEntry(locale).value);
+    }
+
+    /**
+     * Formats the message.
+     *
+     * @param locale Locale to format the text for (or <code>null</code>
+     * for the default locale).
+     * @param args The objects to use as {0}, {1}, etc.
+     * @return Localized, formatted text.
+     * @throws MissingResourceException if the message is not found
+     * @see SimpleLocalizationService#format(String, Locale, String, Object[])
+     */
+    public String format(Locale locale, Object... args)
+    {
+        if (resolver == null)
+        {
+            return service.format(bundleName, locale, key, args == null ? NO_ARGS : args);
+        }
+        return getEntry(locale).message().format(args == null ? NO_ARGS : args);
+    }
+
+    /**
+     * Formats the message using a reusable list of arguments, appending
+     * it to a buffer.
+     *
+     * @param out The buffer to append to.
+     * @param locale Locale to format the text for (or <code>null</code>
+     * for the default locale).
+     * @param args The arguments to use as {0}, {1}, etc.
+     * @return The buffer.
+     * @throws MissingResourceException if the message is not found
+     * @see SimpleLocalizationService#formatTo(StringBuilder, String, Locale, String, MessageArguments)
+     */
+    public StringBuilder formatTo(StringBuilder out, Locale locale, MessageArguments args)
+    {
+        if (resolver == null)
+        {
+            return service.formatTo(out, bundleName, locale, key, args == null ? new MessageArguments() : args);
+        }
+        try
+        {
+            getEntry(locale).message().formatTo(out, args == null ? new MessageArguments() : args);
+        }
+        catch (IOException e)
+        {
+            // a StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return out;
+    }
+
+    /**
+     * Finds the entry for a locale, resolving it if it is missing or
+     * has been invalidated by a reload.
+     *
+     * @param locale The locale, or <code>null</code> for the default.
+     * @return The entry.
+     */
+    private Entry getEntry(Locale locale)
+    {
+        if (locale == null)
+        {
+            locale = resolver.getDefaultLocale();
+        }
+        int generation = resolver.getGeneration();
+        for (Entry entry : entries)
+        {
+            if (entry.locale == locale || entry.locale.equals(locale))
+            {
+                if (entry.generation == generation)
+                {
+                    return entry;
+                }
+                break;
+            }
+        }
+        Entry entry = new Entry(locale, generation,
+            resolver.tryGetString(bundleName, locale, key).orElse(null));
+        remember(entry);
+        return entry;
+    }
+
+    /**
+     * Adds an entry, replacing the one for the same locale.  When the
+     * maximum number of locales is reached, the oldest entry is
+     * dropped.
+     *
+     * @param entry The entry.
+     */
+    private synchronized void remember(Entry entry)
+    {
+        Entry[] current = entries;
+        int length = current.length;
+        for (int i = 0; i < length; i++)
+        {
+            if (current[i].locale.equals(entry.locale))
+            {
+                Entry[] changed = current.clone();
+                changed[i] = entry;
+                entries = changed;
+                return;
+            }
+        }
+        Entry[] changed = (length < MAX_LOCALES)
+            ? Arrays.copyOf(current, length + 1)
+            : Arrays.copyOfRange(current, 1, length + 1);
+        changed[changed.length - 1] = entry;
+        entries = changed;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return bundleName + '/' + key;
+    }
+
+    /**
+     * The message resolved for one locale.
+     */
+    private final class Entry
+    {
+        /** The locale. */
+        final Locale locale;
+
+        /** The generation of the bundles the value was resolved from. */
+        final int generation;
+
+        /** The text, or <code>null</code> if not found. */
+        final String value;
+
+        /** The parsed format, created on first use. */
+        private volatile MessagePattern message;
+
+        Entry(Locale locale, int generation, String value)
+        {
+            this.locale = locale;
+            this.generation = generation;
+            this.value = value;
+        }
+
+        /**
+         * @return The text.
+         * @throws MissingResourceException if the message is not found
+         */
+        String value()
+        {
+            if (value == null)
+            {
+                throw new MissingResourceException(
+                    LocalizationService.SERVICE_NAME
+                        + " noticed missing resource: bundleName=" + bundleName
+                        + ", locale=" + locale + ", key=" + key,
+                    bundleName, key);
+            }
+            return value;
+        }
+
+        /**
+         * @return The parsed format.
+         * @throws MissingResourceException if the message is not found
+         */
+        MessagePattern message()
+        {
+            MessagePattern result = message;
+            if (result == null)
+            {
+                result = resolver.compileMessage(value(), resolver.getFormatLocale(locale));
+                message = result;
+            }
+            return result;
+        }
+    }
+}
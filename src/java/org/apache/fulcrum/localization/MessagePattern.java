@@ -0,0 +1,53 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * A message pattern parsed once, which formats its text for a locale
+ * from arguments.  Implementations are immutable, or synchronize
+ * internally, so one instance can be used by several threads.
+ *
+ * @version $Id$
+ */
+interface MessagePattern
+{
+    /**
+     * Formats the message.
+     *
+     * @param args the arguments to use as {0}, {1}, etc.
+     * @return the formatted message
+     * @throws IllegalArgumentException if an argument cannot be
+     * formatted as the pattern requires
+     */
+    String format(Object[] args);
+
+    /**
+     * Formats the message, appending it to <code>out</code>.
+     *
+     * @param out where to append the formatted message
+     * @param args the arguments to use as {0}, {1}, etc.
+     * @throws IOException if appending fails
+     * @throws IllegalArgumentException if an argument cannot be
+     * formatted as the pattern requires
+     */
+    void formatTo(Appendable out, MessageArguments args) throws IOException;
+}
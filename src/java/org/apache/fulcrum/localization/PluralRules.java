@@ -0,0 +1,501 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The CLDR plural rules of a language, which choose the plural
+ * category (<code>zero</code>, <code>one</code>, <code>two</code>,
+ * <code>few</code>, <code>many</code> or <code>other</code>) of a
+ * number.
+ *
+ * <p>
+ * The rules of the common languages are kept in the CLDR rule syntax,
+ * e.g. <code>one: i = 1 and v = 0</code>, and compiled into immutable
+ * conditions on first use.  Languages without rules only use
+ * <code>other</code>.
+ * </p>
+ *
+ * @version $Id$
+ */
+final class PluralRules
+{
+    /** The category of numbers no rule applies to. */
+    static final String OTHER = "other";
+
+    /** The cardinal rules followed by the languages using them. */
+    private static final String[][] CARDINALS = {
+        { "one: i = 0 or n = 1",
+            "am", "as", "bn", "doi", "fa", "gu", "hi", "kn", "pcm", "zu" },
+        { "one: i = 0,1",
+            "ff", "hy", "kab" },
+        { "one: i = 0,1; many: e = 0 and i != 0 and i % 1000000 = 0 and v = 0 or e != 0..5",
+            "fr" },
+        { "one: i = 0..1; many: e = 0 and i != 0 and i % 1000000 = 0 and v = 0 or e != 0..5",
+            "pt" },
+        { "one: i = 1 and v = 0; many: e = 0 and i != 0 and i % 1000000 = 0 and v = 0 or e != 0..5",
+            "ca", "it", "pt_PT" },
+        { "one: n = 1; many: e = 0 and i != 0 and i % 1000000 = 0 and v = 0 or e != 0..5",
+            "es" },
+        { "one: i = 1 and v = 0",
+            "ast", "de", "en", "et", "fi", "fy", "gl", "ia", "io", "lij", "nl", "sc",
+            "sv", "sw", "ur", "yi" },
+        { "one: n = 0,1 or i = 0 and f = 1",
+            "si" },
+        { "one: n = 0..1",
+            "ak", "bho", "guw", "ln", "mg", "nso", "pa", "ti", "wa" },
+        { "one: n = 1",
+            "af", "az", "bg", "ee", "el", "eo", "eu", "fo", "ha", "hu", "ka", "kk", "kl",
+            "ky", "lb", "ml", "mn", "mr", "nb", "ne", "nn", "no", "om", "or", "ps", "rm",
+            "sd", "so", "sq", "ta", "te", "tk", "tr", "ug", "uz", "xh" },
+        { "one: n = 1 or t != 0 and i = 0,1",
+            "da" },
+        { "one: t = 0 and i % 10 = 1 and i % 100 != 11 or t % 10 = 1 and t % 100 != 11",
+            "is" },
+        { "one: v = 0 and i % 10 = 1 and i % 100 != 11 or f % 10 = 1 and f % 100 != 11",
+            "mk" },
+        { "one: v = 0 and i = 1,2,3 or v = 0 and i % 10 != 4,6,9 or v != 0 and f % 10 != 4,6,9",
+            "ceb", "fil", "tl" },
+        { "zero: n % 10 = 0 or n % 100 = 11..19 or v = 2 and f % 100 = 11..19; "
+            + "one: n % 10 = 1 and n % 100 != 11 or v = 2 and f % 10 = 1 and f % 100 != 11 "
+            + "or v != 2 and f % 10 = 1",
+            "lv", "prg" },
+        { "one: i = 1 and v = 0 or i = 0 and v != 0; two: i = 2 and v = 0",
+            "he", "iw" },
+        { "one: n = 1; two: n = 2",
+            "iu", "naq", "sat", "se", "sma", "smi", "smj", "smn", "sms" },
+        { "one: i = 1 and v = 0; few: v != 0 or n = 0 or n != 1 and n % 100 = 1..19",
+            "mo", "ro" },
+        { "one: v = 0 and i % 10 = 1 and i % 100 != 11 or f % 10 = 1 and f % 100 != 11; "
+            + "few: v = 0 and i % 10 = 2..4 and i % 100 != 12..14 or f % 10 = 2..4 and f % 100 != 12..14",
+            "bs", "hr", "sh", "sr" },
+        { "one: n = 1,11; two: n = 2,12; few: n = 3..10,13..19",
+            "gd" },
+        { "one: v = 0 and i % 100 = 1; two: v = 0 and i % 100 = 2; few: v = 0 and i % 100 = 3..4 or v != 0",
+            "sl" },
+        { "one: v = 0 and i % 100 = 1 or f % 100 = 1; two: v = 0 and i % 100 = 2 or f % 100 = 2; "
+            + "few: v = 0 and i % 100 = 3..4 or f % 100 = 3..4",
+            "dsb", "hsb" },
+        { "one: i = 1 and v = 0; few: i = 2..4 and v = 0; many: v != 0",
+            "cs", "sk" },
+        { "one: i = 1 and v = 0; few: v = 0 and i % 10 = 2..4 and i % 100 != 12..14; "
+            + "many: v = 0 and i != 1 and i % 10 = 0..1 or v = 0 and i % 10 = 5..9 or v = 0 and i % 100 = 12..14",
+            "pl" },
+        { "one: n % 10 = 1 and n % 100 != 11; few: n % 10 = 2..4 and n % 100 != 12..14; "
+            + "many: n % 10 = 0 or n % 10 = 5..9 or n % 100 = 11..14",
+            "be" },
+        { "one: n % 10 = 1 and n % 100 != 11..19; few: n % 10 = 2..9 and n % 100 != 11..19; many: f != 0",
+            "lt" },
+        { "one: v = 0 and i % 10 = 1 and i % 100 != 11; few: v = 0 and i % 10 = 2..4 and i % 100 != 12..14; "
+            + "many: v = 0 and i % 10 = 0 or v = 0 and i % 10 = 5..9 or v = 0 and i % 100 = 11..14",
+            "ru", "uk" },
+        { "one: n % 10 = 1 and n % 100 != 11,71,91; two: n % 10 = 2 and n % 100 != 12,72,92; "
+            + "few: n % 10 = 3..4,9 and n % 100 != 10..19,70..79,90..99; many: n != 0 and n % 1000000 = 0",
+            "br" },
+        { "one: n = 1; two: n = 2; few: n = 0 or n % 100 = 3..10; many: n % 100 = 11..19",
+            "mt" },
+        { "one: n = 1; two: n = 2; few: n = 3..6; many: n = 7..10",
+            "ga" },
+        { "zero: n = 0; one: n = 1; two: n = 2; few: n % 100 = 3..10; many: n % 100 = 11..99",
+            "ar", "ars" },
+        { "zero: n = 0; one: n = 1; two: n = 2; few: n = 3; many: n = 6",
+            "cy" }
+    };
+
+    /** The ordinal rules followed by the languages using them. */
+    private static final String[][] ORDINALS = {
+        { "one: n % 10 = 1 and n % 100 != 11; two: n % 10 = 2 and n % 100 != 12; few: n % 10 = 3 and n % 100 != 13",
+            "en" },
+        { "one: n = 1",
+            "fil", "fr", "ga", "hy", "lo", "mo", "ms", "ro", "tl", "vi" },
+        { "one: n % 10 = 1,2 and n % 100 != 11,12",
+            "sv" },
+        { "many: n = 11,8,80,800",
+            "it", "sc" },
+        { "one: n = 1,5",
+            "hu" },
+        { "one: n = 1,3; two: n = 2; few: n = 4",
+            "ca" },
+        { "zero: n = 0,7,8,9; one: n = 1; two: n = 2; few: n = 3,4; many: n = 5,6",
+            "cy" }
+    };
+
+    /** The rules of languages without rules, only using other. */
+    private static final PluralRules OTHER_ONLY = new PluralRules(new String[0], new Condition[0]);
+
+    /**
+     * The cardinal rules keyed by language or language and country,
+     * as text until compiled.
+     */
+    private static final Map<String, Object> CARDINAL_RULES = index(CARDINALS);
+
+    /**
+     * The ordinal rules keyed by language or language and country,
+     * as text until compiled.
+     */
+    private static final Map<String, Object> ORDINAL_RULES = index(ORDINALS);
+
+    /** The categories in the order their conditions are checked. */
+    private final String[] categories;
+
+    /** The condition of each category. */
+    private final Condition[] conditions;
+
+    /**
+     * @param categories the categories in the order their conditions
+     * are checked
+     * @param conditions the condition of each category
+     */
+    private PluralRules(String[] categories, Condition[] conditions)
+    {
+        this.categories = categories;
+        this.conditions = conditions;
+    }
+
+    /**
+     * Retrieves the plural rules of a locale.
+     *
+     * @param locale the locale
+     * @param ordinal whether to choose the categories of ordinal
+     * numbers like 1st, 2nd, instead of counts
+     * @return the rules
+     */
+    static PluralRules forLocale(Locale locale, boolean ordinal)
+    {
+        Map<String, Object> rules = ordinal ? ORDINAL_RULES : CARDINAL_RULES;
+        String key = locale.getLanguage() + "_" + locale.getCountry();
+        Object result = rules.get(key);
+        if (result == null)
+        {
+            key = locale.getLanguage();
+            result = rules.get(key);
+        }
+        if (result == null)
+        {
+            return OTHER_ONLY;
+        }
+        if (result instanceof String)
+        {
+            // compiling is idempotent, so racing threads do no harm
+            PluralRules compiled = compile((String) result);
+            rules.put(key, compiled);
+            return compiled;
+        }
+        return (PluralRules) result;
+    }
+
+    /**
+     * Chooses the plural category of a number.
+     *
+     * @param number the number
+     * @return the category
+     */
+    String select(Number number)
+    {
+        if (conditions.length == 0)
+        {
+            return OTHER;
+        }
+        Operands operands = new Operands(number);
+        for (int i = 0; i < conditions.length; i++)
+        {
+            if (conditions[i].matches(operands))
+            {
+                return categories[i];
+            }
+        }
+        return OTHER;
+    }
+
+    /**
+     * Maps languages to the text of their rules.
+     *
+     * @param table the rules followed by the languages using them
+     * @return the rules keyed by language
+     */
+    private static Map<String, Object> index(String[][] table)
+    {
+        Map<String, Object> result = new ConcurrentHashMap<String, Object>();
+        for (String[] row : table)
+        {
+            for (int i = 1; i < row.length; i++)
+            {
+                result.put(row[i], row[0]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compiles rules in CLDR syntax, e.g.
+     * <code>one: i = 1 and v = 0; few: n = 2..4</code>.
+     *
+     * @param text the rules
+     * @return the compiled rules
+     */
+    static PluralRules compile(String text)
+    {
+        List<String> categories = new ArrayList<String>();
+        List<Condition> conditions = new ArrayList<Condition>();
+        for (String rule : text.split(";"))
+        {
+            int colon = rule.indexOf(':');
+            categories.add(rule.substring(0, colon).trim());
+            List<Relation[]> alternatives = new ArrayList<Relation[]>();
+            for (String alternative : rule.substring(colon + 1).split(" or "))
+            {
+                String[] terms = alternative.split(" and ");
+                Relation[] relations = new Relation[terms.length];
+                for (int i = 0; i < terms.length; i++)
+                {
+                    relations[i] = new Relation(terms[i].trim());
+                }
+                alternatives.add(relations);
+            }
+            conditions.add(new Condition(alternatives.toArray(new Relation[0][])));
+        }
+        return new PluralRules(categories.toArray(new String[0]),
+            conditions.toArray(new Condition[0]));
+    }
+
+    /**
+     * The condition of a category: any of several conjunctions of
+     * relations.
+     */
+    private static final class Condition
+    {
+        /** The conjunctions of relations. */
+        private final Relation[][] alternatives;
+
+        /**
+         * @param alternatives the conjunctions of relations
+         */
+        Condition(Relation[][] alternatives)
+        {
+            this.alternatives = alternatives;
+        }
+
+        /**
+         * @param operands the operands of a number
+         * @return whether the number meets the condition
+         */
+        boolean matches(Operands operands)
+        {
+            for (Relation[] relations : alternatives)
+            {
+                boolean all = true;
+                for (int i = 0; all && i < relations.length; i++)
+                {
+                    all = relations[i].matches(operands);
+                }
+                if (all)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A relation like <code>i % 10 = 2..4,9</code> or
+     * <code>v != 0</code>.
+     */
+    private static final class Relation
+    {
+        /** The operand, one of n, i, v, w, f, t, c and e. */
+        private final char operand;
+
+        /** The modulus applied to the operand, or 0 for none. */
+        private final long modulus;
+
+        /** Whether the operand must not be in the ranges. */
+        private final boolean negated;
+
+        /** The lower and upper bounds of the ranges, in pairs. */
+        private final long[] ranges;
+
+        /**
+         * @param text the relation in CLDR syntax
+         */
+        Relation(String text)
+        {
+            int equals = text.indexOf('=');
+            negated = text.charAt(equals - 1) == '!';
+            String expression = text.substring(0, negated ? equals - 1 : equals).trim();
+            operand = expression.charAt(0);
+            int percent = expression.indexOf('%');
+            modulus = percent < 0 ? 0 : Long.parseLong(expression.substring(percent + 1).trim());
+            String[] items = text.substring(equals + 1).trim().split(",");
+            ranges = new long[items.length * 2];
+            for (int i = 0; i < items.length; i++)
+            {
+                String item = items[i].trim();
+                int dots = item.indexOf("..");
+                ranges[i * 2] = Long.parseLong(dots < 0 ? item : item.substring(0, dots));
+                ranges[i * 2 + 1] = Long.parseLong(dots < 0 ? item : item.substring(dots + 2));
+            }
+        }
+
+        /**
+         * @param operands the operands of a number
+         * @return whether the number meets the relation
+         */
+        boolean matches(Operands operands)
+        {
+            double value = operands.get(operand);
+            if (modulus != 0)
+            {
+                value %= modulus;
+            }
+            boolean in = false;
+            for (int i = 0; !in && i < ranges.length; i += 2)
+            {
+                // a fraction is in no range, but may equal its bounds
+                in = (value == ranges[i])
+                    || (value == Math.rint(value) && value >= ranges[i] && value <= ranges[i + 1]);
+            }
+            return in != negated;
+        }
+    }
+
+    /**
+     * The operands of a number the rules refer to, as defined by CLDR:
+     * the absolute value <code>n</code>, its integer digits
+     * <code>i</code>, the number <code>v</code> of visible fraction
+     * digits and <code>w</code> without trailing zeros, and the visible
+     * fraction digits <code>f</code> and <code>t</code> without
+     * trailing zeros.  The exponent <code>e</code> of compact notation
+     * is always 0.
+     */
+    private static final class Operands
+    {
+        /** The absolute value. */
+        private final double n;
+
+        /** The integer digits. */
+        private final double i;
+
+        /** The number of visible fraction digits. */
+        private final int v;
+
+        /** The number of visible fraction digits without trailing zeros. */
+        private final int w;
+
+        /** The visible fraction digits. */
+        private final double f;
+
+        /** The visible fraction digits without trailing zeros. */
+        private final double t;
+
+        /**
+         * @param number the number; fractions of floating point numbers
+         * are rounded to the three digits the default number format
+         * shows, and trailing zeros are only visible in
+         * <code>BigDecimal</code>s
+         */
+        Operands(Number number)
+        {
+            if (number instanceof Integer || number instanceof Long
+                || number instanceof Short || number instanceof Byte)
+            {
+                long value = Math.abs(number.longValue());
+                n = value;
+                i = value;
+                v = 0;
+                w = 0;
+                f = 0;
+                t = 0;
+                return;
+            }
+            double value = Math.abs(number.doubleValue());
+            if (Double.isNaN(value) || Double.isInfinite(value))
+            {
+                n = value;
+                i = value;
+                v = 0;
+                w = 0;
+                f = 0;
+                t = 0;
+                return;
+            }
+            BigDecimal decimal;
+            if (number instanceof BigDecimal)
+            {
+                decimal = ((BigDecimal) number).abs();
+            }
+            else if (number instanceof BigInteger)
+            {
+                decimal = new BigDecimal((BigInteger) number).abs();
+            }
+            else
+            {
+                decimal = BigDecimal.valueOf(value).setScale(3, RoundingMode.HALF_EVEN).stripTrailingZeros();
+            }
+            if (decimal.scale() < 0)
+            {
+                decimal = decimal.setScale(0);
+            }
+            n = decimal.doubleValue();
+            BigDecimal integer = decimal.setScale(0, RoundingMode.DOWN);
+            i = integer.doubleValue();
+            v = decimal.scale();
+            BigDecimal fraction = decimal.subtract(integer).movePointRight(v);
+            f = fraction.doubleValue();
+            BigDecimal stripped = fraction.signum() == 0 ? BigDecimal.ZERO : fraction.stripTrailingZeros();
+            t = stripped.unscaledValue().doubleValue();
+            w = fraction.signum() == 0 ? 0 : v + stripped.scale();
+        }
+
+        /**
+         * @param operand the name of the operand
+         * @return the value of the operand
+         */
+        double get(char operand)
+        {
+            switch (operand)
+            {
+                case 'n':
+                    return n;
+                case 'i':
+                    return i;
+                case 'v':
+                    return v;
+                case 'w':
+                    return w;
+                case 'f':
+                    return f;
+                case 't':
+                    return t;
+                default:
+                    // c and e, the exponent of compact notation
+                    return 0;
+            }
+        }
+    }
+}
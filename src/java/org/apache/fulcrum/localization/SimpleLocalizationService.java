@@ -20,9 +20,17 @@ package org.apache.fulcrum.localization;
  */
 
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
+import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -118,6 +126,26 @@ public interface SimpleLocalizationService
      */
     ResourceBundle getBundle(String bundleName, Locale locale);
 
+    /**
+     * Retrieves a bundle without blocking the calling thread on loading
+     * it.  If the bundle is cached, the returned future is already
+     * complete; otherwise the bundle is loaded on the executor of the
+     * service.  The default implementation always loads it on the
+     * common fork/join pool.
+     *
+     * @param bundleName Name of bundle (or <code>null</code> for the
+     * default bundle).
+     * @param locale A Locale (or <code>null</code> for the default
+     * locale).
+     * @return The future bundle, completed exceptionally with a
+     * <code>MissingResourceException</code> if there is none.
+     * @see #getBundle(String, Locale)
+     */
+    default CompletableFuture<ResourceBundle> getBundleAsync(String bundleName, Locale locale)
+    {
+        return CompletableFuture.supplyAsync(() -> getBundle(bundleName, locale));
+    }
+
     /**
      * Tries very hard to return a value, looking first in the
      * specified bundle, then searching list of default bundles
@@ -130,6 +158,167 @@ public interface SimpleLocalizationService
      * @throws MissingResourceException if the resource is not found
      */
     String getString(String bundleName, Locale locale, String key) throws MissingResourceException;
+
+    /**
+     * Looks up a value the same way as
+     * {@link #getString(String, Locale, String)}, but reports a missing
+     * bundle or key with an empty result instead of throwing a
+     * <code>MissingResourceException</code>.  Use this for keys which
+     * are expected to be absent at times.
+     *
+     * @param bundleName Name of the bundle to look in first.
+     * @param locale Locale to get text for.
+     * @param key Name of the text to retrieve.
+     * @return Localized text, or an empty <code>Optional</code> if none
+     * was found.
+     */
+    default Optional<String> tryGetString(String bundleName, Locale locale, String key)
+    {
+        try
+        {
+            return Optional.of(getString(bundleName, locale, key));
+        }
+        catch (MissingResourceException e)
+        {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Looks up a value without blocking the calling thread on loading
+     * bundles.  If all bundles to search are cached, the returned
+     * future is already complete; otherwise the lookup runs on the
+     * executor of the service.  The default implementation always
+     * looks it up on the common fork/join pool.
+     *
+     * @param bundleName Name of the bundle to look in first.
+     * @param locale Locale to get text for.
+     * @param key Name of the text to retrieve.
+     * @return The future text, completed exceptionally with a
+     * <code>MissingResourceException</code> if there is none.
+     * @see #getString(String, Locale, String)
+     */
+    default CompletableFuture<String> getStringAsync(String bundleName, Locale locale, String key)
+    {
+        return CompletableFuture.supplyAsync(() -> getString(bundleName, locale, key));
+    }
+
+    /**
+     * Resolves a message once into a handle, which looks it up and
+     * formats it for any locale without hashing the bundle name and
+     * key again.  The handle searches the bundles like
+     * {@link #getString(String, Locale, String)} and follows reloads.
+     *
+     * @param bundleName Name of the bundle to look in first (or
+     * <code>null</code> for the default bundle).
+     * @param key Name of the text to retrieve.
+     * @return The handle.
+     */
+    default MessageHandle getMessageHandle(String bundleName, String key)
+    {
+        return new MessageHandle(this, bundleName, key);
+    }
+
+    /**
+     * Retrieves all texts of a bundle for a locale, with the default
+     * bundles merged in like {@link #getStringsWithPrefix(String,
+     * Locale, String)} does, serialized for sending to clients.  The
+     * default implementation builds a new catalog on every call;
+     * {@link SimpleLocalizationServiceImpl} builds it once and caches
+     * it until the bundles are reloaded.
+     *
+     * @param bundleName Name of the bundle (or <code>null</code> for
+     * the default bundle).
+     * @param locale Locale to get texts for (or <code>null</code> for
+     * the default locale).
+     * @return The catalog.
+     * @throws MissingResourceException if the bundle is not found
+     */
+    default MessageCatalog getMessageCatalog(String bundleName, Locale locale)
+        throws MissingResourceException
+    {
+        return new MessageCatalog(bundleName != null ? bundleName : getDefaultBundleName(),
+                                  locale != null ? locale : getDefaultLocale(),
+                                  getStringsWithPrefix(bundleName, locale, ""));
+    }
+
+    /**
+     * Looks up many values at once.  The bundles are searched like
+     * {@link #getString(String, Locale, String)}, but they are resolved
+     * only once for all keys.
+     *
+     * @param bundleName Name of the bundle to look in first.
+     * @param locale Locale to get text for.
+     * @param keys Names of the texts to retrieve.
+     * @return The localized texts keyed by name, in the order of the
+     * keys.  Keys which are not found are left out.
+     * @throws MissingResourceException if the bundle is not found
+     */
+    default Map<String, String> getStrings(String bundleName, Locale locale, Collection<String> keys)
+        throws MissingResourceException
+    {
+        // fails if the bundle is missing
+        getBundle(bundleName, locale);
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        for (String key : keys)
+        {
+            tryGetString(bundleName, locale, key).ifPresent(value -> values.put(key, value));
+        }
+        return values;
+    }
+
+    /**
+     * Looks up all values whose keys start with a prefix, e.g. all
+     * labels of a page.  Where several bundles contain a key, the value
+     * {@link #getString(String, Locale, String)} would return wins.
+     *
+     * @param bundleName Name of the bundle to look in first.
+     * @param locale Locale to get text for.
+     * @param prefix The prefix of the keys.
+     * @return The localized texts keyed by name, sorted by name.
+     * @throws MissingResourceException if the bundle is not found
+     */
+    default SortedMap<String, String> getStringsWithPrefix(String bundleName, Locale locale, String prefix)
+        throws MissingResourceException
+    {
+        SortedMap<String, String> values = new TreeMap<String, String>();
+        addStrings(values, getBundle(bundleName, locale), prefix);
+        for (String name : getBundleNames())
+        {
+            try
+            {
+                addStrings(values, getBundle(name, locale), prefix);
+            }
+            catch (MissingResourceException e)
+            {
+                // the default bundles are optional
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Adds the texts of a bundle whose keys start with a prefix, unless
+     * an earlier bundle contained them.
+     *
+     * @param values The texts found so far.
+     * @param rb The bundle.
+     * @param prefix The prefix of the keys.
+     */
+    private static void addStrings(Map<String, String> values, ResourceBundle rb, String prefix)
+    {
+        for (String key : rb.keySet())
+        {
+            if (key.startsWith(prefix) && !values.containsKey(key))
+            {
+                Object value = rb.getObject(key);
+                if (value instanceof String)
+                {
+                    values.put(key, (String) value);
+                }
+            }
+        }
+    }
     
     /**
      * Returns the value for the key in the default bundle and the default locale.
@@ -187,4 +376,69 @@ public interface SimpleLocalizationService
      */
     String format(String bundleName, Locale locale,
                          String key, Object[] args);
+
+    /**
+     * Formats a localized value using a reusable list of arguments,
+     * appending it to a buffer instead of creating a string.
+     * Primitive arguments are only boxed if the text uses format types
+     * like <code>{0,number,#.##}</code>; plain placeholders like
+     * <code>{0}</code> are formatted directly.  The default
+     * implementation boxes all arguments and appends the result of
+     * {@link #format(String, Locale, String, Object[])}.
+     *
+     * @param out The buffer to append to.
+     * @param bundleName The bundle in which to look for the localizable text.
+     * @param locale The locale for which to format the text.
+     * @param key The identifier for the localized text to retrieve,
+     * @param args The arguments to use as {0}, {1}, etc. when
+     *             formatting the localized text.
+     * @return The buffer.
+     */
+    default StringBuilder formatTo(StringBuilder out, String bundleName, Locale locale,
+                         String key, MessageArguments args)
+    {
+        return out.append(format(bundleName, locale, key, args.toArray()));
+    }
+
+    /**
+     * Formats a localized value using a reusable list of arguments,
+     * appending it to e.g. a <code>Writer</code>.
+     *
+     * @param out Where to append the text.
+     * @param bundleName The bundle in which to look for the localizable text.
+     * @param locale The locale for which to format the text.
+     * @param key The identifier for the localized text to retrieve,
+     * @param args The arguments to use as {0}, {1}, etc. when
+     *             formatting the localized text.
+     * @return Where the text was appended.
+     * @throws IOException if appending fails
+     * @see #formatTo(StringBuilder, String, Locale, String, MessageArguments)
+     */
+    default Appendable formatTo(Appendable out, String bundleName, Locale locale,
+                         String key, MessageArguments args) throws IOException
+    {
+        return out.append(format(bundleName, locale, key, args.toArray()));
+    }
+
+    /**
+     * Formats a localized value without blocking the calling thread on
+     * loading bundles.  If the message or all bundles to search are
+     * cached, the returned future is already complete; otherwise the
+     * formatting runs on the executor of the service.  The default
+     * implementation always formats on the common fork/join pool.
+     *
+     * @param bundleName The bundle in which to look for the localizable text.
+     * @param locale The locale for which to format the text.
+     * @param key The identifier for the localized text to retrieve,
+     * @param args The objects to use as {0}, {1}, etc. when
+     *             formatting the localized text.
+     * @return The future formatted text, completed exceptionally with a
+     * <code>MissingResourceException</code> if there is no text.
+     * @see #format(String, Locale, String, Object[])
+     */
+    default CompletableFuture<String> formatAsync(String bundleName, Locale locale,
+                         String key, Object[] args)
+    {
+        return CompletableFuture.supplyAsync(() -> format(bundleName, locale, key, args));
+    }
 }
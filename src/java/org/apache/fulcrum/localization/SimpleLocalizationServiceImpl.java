@@ -19,18 +19,47 @@ package org.apache.fulcrum.localization;
  * under the License.
  */
 
-import java.text.MessageFormat;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IllformedLocaleException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListResourceBundle;
 import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
+import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.avalon.framework.activity.Disposable;
 import org.apache.avalon.framework.activity.Initializable;
 import org.apache.avalon.framework.configuration.Configurable;
 import org.apache.avalon.framework.configuration.Configuration;
 import org.apache.avalon.framework.configuration.ConfigurationException;
 import org.apache.avalon.framework.logger.AbstractLogEnabled;
+import org.apache.commons.lang3.LocaleUtils;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -74,23 +103,315 @@ import org.apache.commons.lang3.StringUtils;
  */
 public class SimpleLocalizationServiceImpl
     extends AbstractLogEnabled
-    implements SimpleLocalizationService, Configurable, Initializable
+    implements SimpleLocalizationService, Configurable, Initializable, Disposable
 {
     /** Key Prefix for our bundles */
     private static final String BUNDLES = "bundles";
+
+    /** Key for the bundle preloading configuration */
+    private static final String PRELOAD = "preload";
+
+    /** Attribute making startup fail if a preloaded bundle is missing */
+    private static final String FAIL_ON_MISSING = "fail-on-missing";
+
+    /** Attribute holding the maximum number of cached message formats */
+    private static final String FORMAT_CACHE_SIZE = "format-cache-size";
+
+    /** The default maximum number of cached message formats */
+    private static final int DEFAULT_FORMAT_CACHE_SIZE = 1000;
+
+    /** Attribute holding the maximum number of cached bundle names */
+    private static final String BUNDLE_CACHE_SIZE = "bundle-cache-size";
+
+    /** The default maximum number of cached bundle names */
+    private static final int DEFAULT_BUNDLE_CACHE_SIZE = 100;
+
+    /** Attribute holding the maximum number of locales cached per bundle name */
+    private static final String LOCALE_CACHE_SIZE = "locale-cache-size";
+
+    /** The default maximum number of locales cached per bundle name */
+    private static final int DEFAULT_LOCALE_CACHE_SIZE = 200;
+
+    /** Attribute enabling the compact bundle representation */
+    private static final String COMPACT_BUNDLES = "compact-bundles";
+
+    /** Attribute selecting the syntax of messages passed to format() */
+    private static final String MESSAGE_SYNTAX = "message-syntax";
+
+    /** The value of {@link #MESSAGE_SYNTAX} for <code>MessageFormat</code> syntax */
+    private static final String SYNTAX_JAVA = "java";
+
+    /** The value of {@link #MESSAGE_SYNTAX} for ICU syntax */
+    private static final String SYNTAX_ICU = "icu";
+
+    /** Attribute enabling the flattened key index */
+    private static final String KEY_INDEX = "key-index";
+
+    /** The maximum number of requested bundles and locales mapped to a key index */
+    private static final int KEY_INDEX_CACHE_SIZE = 1000;
+
+    /** The maximum number of requested bundles and locales with a cached catalog */
+    private static final int CATALOG_CACHE_SIZE = 100;
+
+    /** The maximum number of locales with cached number and date formatters */
+    private static final int LOCALE_FORMATS_CACHE_SIZE = 100;
+
+    /** Attribute holding the directory of compiled catalog files */
+    private static final String CATALOG_DIRECTORY = "catalog-directory";
+
+    /** Key for the bundle source configuration */
+    private static final String SOURCE = "source";
+
+    /** Attribute holding the class of the bundle source */
+    private static final String SOURCE_CLASS = "class";
+
+    /** Attribute holding the interval in seconds to refresh the bundle source */
+    private static final String SOURCE_REFRESH_INTERVAL = "refresh-interval";
+
+    /** Attribute holding the number of threads loading bundles for asynchronous calls */
+    private static final String ASYNC_THREADS = "async-threads";
+
+    /** The default number of threads loading bundles for asynchronous calls */
+    private static final int DEFAULT_ASYNC_THREADS = 4;
+
+    /** Attribute holding the interval in seconds to check bundles for changes */
+    private static final String RELOAD_INTERVAL = "reload-interval";
+
+    /** Key for the statistics configuration */
+    private static final String METRICS = "metrics";
+
+    /** Attribute enabling the registration of the statistics MBean */
+    private static final String METRICS_JMX = "jmx";
+
+    /** Attribute holding the object name of the statistics MBean */
+    private static final String METRICS_OBJECT_NAME = "object-name";
+
+    /** The default object name of the statistics MBean */
+    private static final String DEFAULT_OBJECT_NAME =
+        "org.apache.fulcrum.localization:type=LocalizationService";
+
+    /** The initial, empty list of listeners */
+    private static final LocalizationListener[] NO_LISTENERS = new LocalizationListener[0];
     
     /**
      * The value to pass to <code>MessageFormat</code> if a
      * <code>null</code> reference is passed to <code>format()</code>.
      */
     private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * Placeholder cached for a requested locale for which no bundle
+     * could be found, so that repeated requests do not go through
+     * <code>ResourceBundle.getBundle()</code> again.
+     */
+    private static final ResourceBundle MISSING_BUNDLE = new ListResourceBundle()
+    {
+        @Override
+        protected Object[][] getContents()
+        {
+            return new Object[0][];
+        }
+    };
+
+    /** The ISO 639 language codes and the languages the JDK supports. */
+    private static final Set<String> KNOWN_LANGUAGES = new HashSet<String>();
+
+    /** The ISO 3166 country codes and the regions the JDK supports. */
+    private static final Set<String> KNOWN_COUNTRIES = new HashSet<String>();
+
+    /** The scripts the JDK supports. */
+    private static final Set<String> KNOWN_SCRIPTS = new HashSet<String>();
+
+    /** The variants the JDK supports. */
+    private static final Set<String> KNOWN_VARIANTS = new HashSet<String>();
+
+    /**
+     * The keys of the Unicode locale extension which change how the
+     * JDK formats numbers and dates: calendar, currency, first day of
+     * week, hour cycle, numbering system, region override and time
+     * zone.
+     */
+    private static final String[] FORMAT_KEYWORDS = { "ca", "cu", "fw", "hc", "nu", "rg", "tz" };
+
+    static
+    {
+        KNOWN_LANGUAGES.addAll(Arrays.asList(Locale.getISOLanguages()));
+        KNOWN_COUNTRIES.addAll(Arrays.asList(Locale.getISOCountries()));
+        for (Locale locale : Locale.getAvailableLocales())
+        {
+            KNOWN_LANGUAGES.add(locale.getLanguage());
+            KNOWN_COUNTRIES.add(locale.getCountry());
+            KNOWN_SCRIPTS.add(locale.getScript());
+            KNOWN_VARIANTS.add(locale.getVariant());
+        }
+    }
     
     /**
-     * Bundle name keys a HashMap of the ResourceBundles in this
-     * service (which is in turn keyed by Locale).
+     * Bundle name keys a map of the ResourceBundles in this
+     * service (which is in turn keyed by Locale).  A bundle is cached
+     * both under its own locale and under every locale which was
+     * requested and resolved to it.  Both levels are bounded, so
+     * clients cannot grow the cache by sending arbitrary locales.
      */
-    private HashMap<String, HashMap<Locale, ResourceBundle>> bundles = null;
+    private BoundedCache<String, BoundedCache<Locale, ResourceBundle>> bundles;
+
+    /**
+     * The maximum number of locales cached per bundle name.
+     */
+    private int localeCacheSize = DEFAULT_LOCALE_CACHE_SIZE;
     
+    /**
+     * Parsed message formats keyed by bundle name, the locale to
+     * format for (see {@link #getFormatLocale(Locale)}) and key.
+     */
+    private BoundedCache<CacheKey, MessagePattern> formats;
+
+    /**
+     * Converts loaded bundles into their compact representation, or
+     * <code>null</code> to cache bundles as they are loaded.
+     */
+    private BundleCompactor compactor = null;
+
+    /**
+     * Whether messages are parsed in ICU syntax instead of
+     * <code>MessageFormat</code> syntax.
+     */
+    private boolean icuSyntax = false;
+
+    /**
+     * Loads bundles from the bundle source or compiled catalog files,
+     * or <code>null</code> to load them from classes and properties
+     * files only.
+     */
+    private ResourceBundle.Control bundleControl = null;
+
+    /**
+     * The class loader bundles are loaded through with the
+     * <code>bundleControl</code>.  The JVM wide bundle cache is keyed
+     * by the class loader but not by the control, so a loader of our
+     * own keeps the bundles of the control apart from those other
+     * callers load for the same names.
+     */
+    private ClassLoader bundleLoader = null;
+
+    /**
+     * The source of texts other than the class path, or
+     * <code>null</code>.
+     */
+    private BundleSource bundleSource = null;
+
+    /**
+     * The texts loaded from the bundle source, or <code>null</code>.
+     */
+    private SourceBundleStore sourceStore = null;
+
+    /**
+     * The interval in seconds to refresh the texts from the bundle
+     * source, or <code>0</code> to never refresh them.
+     */
+    private int sourceRefreshInterval = 0;
+
+    /**
+     * Whether lookups use a flattened index of the bundle chain.
+     */
+    private boolean useKeyIndex = false;
+
+    /**
+     * Flattened key indexes keyed by requested bundle name and locale.
+     * Requested locales which resolve to the same bundles share one
+     * index.
+     */
+    private final BoundedCache<CacheKey, KeyIndex> keyIndexesByLocale;
+
+    /**
+     * Serialized catalogs keyed by requested bundle name and locale.
+     */
+    private final BoundedCache<CacheKey, MessageCatalog> catalogs;
+
+    /**
+     * Number and date formatters shared by the messages of a locale.
+     */
+    private final BoundedCache<Locale, LocaleFormats> localeFormats;
+
+    /**
+     * The locales to load all default bundles for at startup, or
+     * <code>null</code> to load bundles on first use only.
+     */
+    private List<Locale> preloadLocales = null;
+
+    /**
+     * Whether startup fails if a bundle cannot be preloaded.
+     */
+    private boolean failOnMissing = false;
+
+    /**
+     * The interval in seconds to check bundles for changes, or
+     * <code>0</code> to never reload bundles.
+     */
+    private int reloadInterval = 0;
+
+    /**
+     * The number of threads of the executor created for asynchronous
+     * calls.
+     */
+    private int asyncThreads = DEFAULT_ASYNC_THREADS;
+
+    /**
+     * Runs the loads of asynchronous calls, or <code>null</code> until
+     * the first one misses the cache.
+     */
+    private volatile Executor asyncExecutor = null;
+
+    /**
+     * The executor created by the service, to be shut down on disposal.
+     */
+    private ExecutorService ownAsyncExecutor = null;
+
+    /**
+     * Whether the service has been disposed, after which asynchronous
+     * calls fail instead of creating a new executor.
+     */
+    private boolean disposed = false;
+
+    /**
+     * Runs the periodic checks for changed bundles.
+     */
+    private ScheduledExecutorService reloadScheduler = null;
+
+    /**
+     * Detects changed bundles.
+     */
+    private final BundleChangeDetector changeDetector;
+
+    /**
+     * Serializes reloads.  Readers never take this lock.
+     */
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    /**
+     * Counts the reloads, so message handles know when the values they
+     * resolved are stale.
+     */
+    private volatile int generation = 0;
+
+    /**
+     * The listeners notified about lookups, loads and formatting.
+     * The array is replaced on every change, so the hot paths read it
+     * without locking.
+     */
+    private volatile LocalizationListener[] listeners = NO_LISTENERS;
+
+    /**
+     * The statistics collected, or <code>null</code> if disabled.
+     */
+    private LocalizationStatistics statistics = null;
+
+    /**
+     * The object name to register the statistics under, or
+     * <code>null</code> to not register them.
+     */
+    private ObjectName statisticsName = null;
+
     /**
      * The list of default bundles to search.
      */
@@ -113,7 +434,12 @@ public class SimpleLocalizationServiceImpl
      */
     public SimpleLocalizationServiceImpl()
     {
-        bundles = new HashMap<String, HashMap<Locale, ResourceBundle>>();
+        bundles = new BoundedCache<String, BoundedCache<Locale, ResourceBundle>>(DEFAULT_BUNDLE_CACHE_SIZE);
+        formats = new BoundedCache<CacheKey, MessagePattern>(DEFAULT_FORMAT_CACHE_SIZE);
+        keyIndexesByLocale = new BoundedCache<CacheKey, KeyIndex>(KEY_INDEX_CACHE_SIZE);
+        catalogs = new BoundedCache<CacheKey, MessageCatalog>(CATALOG_CACHE_SIZE);
+        localeFormats = new BoundedCache<Locale, LocaleFormats>(LOCALE_FORMATS_CACHE_SIZE);
+        changeDetector = new BundleChangeDetector(SimpleLocalizationServiceImpl.class.getClassLoader());
     }
 
     /**
@@ -138,6 +464,65 @@ public class SimpleLocalizationServiceImpl
             conf
                 .getAttribute("locale-default-country", jvmDefault.getCountry())
                 .trim();
+        formats = new BoundedCache<CacheKey, MessagePattern>(
+            conf.getAttributeAsInteger(FORMAT_CACHE_SIZE, DEFAULT_FORMAT_CACHE_SIZE));
+        bundles = new BoundedCache<String, BoundedCache<Locale, ResourceBundle>>(
+            conf.getAttributeAsInteger(BUNDLE_CACHE_SIZE, DEFAULT_BUNDLE_CACHE_SIZE));
+        localeCacheSize = conf.getAttributeAsInteger(LOCALE_CACHE_SIZE, DEFAULT_LOCALE_CACHE_SIZE);
+        if (conf.getAttributeAsBoolean(COMPACT_BUNDLES, false))
+        {
+            compactor = new BundleCompactor();
+        }
+        useKeyIndex = conf.getAttributeAsBoolean(KEY_INDEX, false);
+        String syntax = conf.getAttribute(MESSAGE_SYNTAX, SYNTAX_JAVA).trim();
+        if (!SYNTAX_JAVA.equals(syntax) && !SYNTAX_ICU.equals(syntax))
+        {
+            throw new ConfigurationException("Unknown message syntax " + syntax
+                + ", expected " + SYNTAX_JAVA + " or " + SYNTAX_ICU, conf);
+        }
+        icuSyntax = SYNTAX_ICU.equals(syntax);
+        String catalogDirectory = conf.getAttribute(CATALOG_DIRECTORY, null);
+        if (catalogDirectory != null)
+        {
+            bundleControl = new CatalogControl(Paths.get(catalogDirectory.trim()));
+        }
+        final Configuration source = conf.getChild(SOURCE, false);
+        if (source != null)
+        {
+            configureSource(source);
+        }
+        if (compactor != null && bundleControl == null)
+        {
+            // the compact copies replace the bundles the JDK would cache
+            bundleControl = BundleCompactor.CONTROL;
+        }
+        if (bundleControl != null)
+        {
+            bundleLoader = new ClassLoader(SimpleLocalizationServiceImpl.class.getClassLoader())
+            {
+                // delegates everything to the parent
+            };
+        }
+        reloadInterval = conf.getAttributeAsInteger(RELOAD_INTERVAL, 0);
+        asyncThreads = conf.getAttributeAsInteger(ASYNC_THREADS, DEFAULT_ASYNC_THREADS);
+        final Configuration metrics = conf.getChild(METRICS, false);
+        if (metrics != null)
+        {
+            statistics = new LocalizationStatistics(this::getCachedBundleCount);
+            if (metrics.getAttributeAsBoolean(METRICS_JMX, true))
+            {
+                String name = metrics.getAttribute(METRICS_OBJECT_NAME, DEFAULT_OBJECT_NAME);
+                try
+                {
+                    statisticsName = new ObjectName(name);
+                }
+                catch (JMException e)
+                {
+                    throw new ConfigurationException(
+                        "Invalid object name: " + name, metrics, e);
+                }
+            }
+        }
         // FIXME! need to add bundle names
         getLogger().info(
             "initialized lang="
@@ -157,8 +542,58 @@ public class SimpleLocalizationServiceImpl
             }
             initBundleNames(bundleName);
         }
+        final Configuration preload = conf.getChild(PRELOAD, false);
+        if (preload != null)
+        {
+            failOnMissing = preload.getAttributeAsBoolean(FAIL_ON_MISSING, false);
+            Configuration[] nameVal = preload.getChildren();
+            preloadLocales = new ArrayList<Locale>(nameVal.length);
+            for (Configuration locale : nameVal)
+            {
+                try
+                {
+                    preloadLocales.add(LocaleUtils.toLocale(locale.getValue().trim()));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new ConfigurationException(
+                        "Invalid locale to preload: " + locale.getValue(), locale, e);
+                }
+            }
+        }
     }
     
+    /**
+     * Creates and configures the bundle source.
+     *
+     * @param conf the <code>source</code> configuration
+     * @throws ConfigurationException if the source cannot be created
+     * or configured
+     */
+    private void configureSource(Configuration conf) throws ConfigurationException
+    {
+        String className = conf.getAttribute(SOURCE_CLASS);
+        try
+        {
+            bundleSource = Class.forName(className.trim())
+                .asSubclass(BundleSource.class)
+                .getDeclaredConstructor()
+                .newInstance();
+        }
+        catch (ReflectiveOperationException | ClassCastException e)
+        {
+            throw new ConfigurationException("Cannot create bundle source " + className, conf, e);
+        }
+        if (bundleSource instanceof Configurable)
+        {
+            ((Configurable) bundleSource).configure(conf);
+        }
+        sourceRefreshInterval = conf.getAttributeAsInteger(SOURCE_REFRESH_INTERVAL, 0);
+        sourceStore = new SourceBundleStore(bundleSource);
+        bundleControl = new SourceControl(sourceStore, (bundleControl != null ? bundleControl
+            : ResourceBundle.Control.getControl(ResourceBundle.Control.FORMAT_DEFAULT)));
+    }
+
     /**
      * Called the first time the Service is used.
      * 
@@ -168,12 +603,409 @@ public class SimpleLocalizationServiceImpl
 	public void initialize() throws Exception
     {
         defaultLocale = new Locale(defaultLanguage, defaultCountry);
+        if (preloadLocales != null)
+        {
+            preloadBundles();
+        }
+        if (statistics != null)
+        {
+            addLocalizationListener(statistics);
+            if (statisticsName != null)
+            {
+                try
+                {
+                    ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(statistics, statisticsName);
+                }
+                catch (JMException e)
+                {
+                    getLogger().warn("Cannot register statistics as " + statisticsName, e);
+                    statisticsName = null;
+                }
+            }
+        }
+        if (reloadInterval > 0 || sourceRefreshInterval > 0)
+        {
+            reloadScheduler = Executors.newSingleThreadScheduledExecutor(r ->
+            {
+                Thread thread = new Thread(r, "fulcrum-localization-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (reloadInterval > 0)
+        {
+            checkBundles();
+            reloadScheduler.scheduleWithFixedDelay(this::checkBundles,
+                reloadInterval, reloadInterval, TimeUnit.SECONDS);
+        }
+        if (sourceRefreshInterval > 0)
+        {
+            reloadScheduler.scheduleWithFixedDelay(this::checkBundleSource,
+                sourceRefreshInterval, sourceRefreshInterval, TimeUnit.SECONDS);
+        }
         if (getLogger().isInfoEnabled())
         {
             getLogger().info("Localization Service is Initialized now..");
         }
     }
     
+    /**
+     * Avalon lifecycle method
+     *
+     * {@link org.apache.avalon.framework.activity.Disposable}
+     */
+    @Override
+    public void dispose()
+    {
+        if (reloadScheduler != null)
+        {
+            reloadScheduler.shutdownNow();
+            reloadScheduler = null;
+        }
+        if (bundleSource instanceof Disposable)
+        {
+            ((Disposable) bundleSource).dispose();
+        }
+        synchronized (this)
+        {
+            if (ownAsyncExecutor != null)
+            {
+                ownAsyncExecutor.shutdownNow();
+                ownAsyncExecutor = null;
+            }
+            asyncExecutor = null;
+            disposed = true;
+        }
+        if (statisticsName != null)
+        {
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(statisticsName);
+            }
+            catch (JMException e)
+            {
+                getLogger().warn("Cannot unregister statistics " + statisticsName, e);
+            }
+            statisticsName = null;
+        }
+    }
+
+    /**
+     * Adds a listener to be notified about lookups, loads and
+     * formatting.
+     *
+     * @param listener The listener.
+     */
+    public synchronized void addLocalizationListener(LocalizationListener listener)
+    {
+        LocalizationListener[] current = listeners;
+        LocalizationListener[] changed = Arrays.copyOf(current, current.length + 1);
+        changed[current.length] = listener;
+        listeners = changed;
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener The listener.
+     */
+    public synchronized void removeLocalizationListener(LocalizationListener listener)
+    {
+        listeners = Arrays.stream(listeners)
+            .filter(l -> l != listener)
+            .toArray(LocalizationListener[]::new);
+    }
+
+    /**
+     * Sets the executor to run the loads of asynchronous calls on,
+     * e.g. one starting a virtual thread per task.  By default the
+     * service creates a pool of <code>async-threads</code> threads on
+     * first use.
+     *
+     * @param executor The executor.
+     */
+    public synchronized void setAsyncExecutor(Executor executor)
+    {
+        asyncExecutor = executor;
+    }
+
+    /**
+     * @return The executor to run the loads of asynchronous calls on,
+     * or <code>null</code> if the service has been disposed.
+     */
+    private Executor getAsyncExecutor()
+    {
+        Executor executor = asyncExecutor;
+        if (executor == null)
+        {
+            synchronized (this)
+            {
+                executor = asyncExecutor;
+                if (executor == null && !disposed)
+                {
+                    AtomicInteger count = new AtomicInteger();
+                    ownAsyncExecutor = Executors.newFixedThreadPool(Math.max(1, asyncThreads), r ->
+                    {
+                        Thread thread = new Thread(r, "fulcrum-localization-async-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor = ownAsyncExecutor;
+                    asyncExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Retrieves the statistics collected by the service.
+     *
+     * @return The statistics, or <code>null</code> if they are not
+     * enabled in the configuration.
+     */
+    public LocalizationStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * @return The number of bundles in the cache, counting each
+     * locale a bundle is cached for.
+     */
+    private int getCachedBundleCount()
+    {
+        int count = 0;
+        for (BoundedCache<Locale, ResourceBundle> bundlesByLocale : bundles.values())
+        {
+            count += bundlesByLocale.size();
+        }
+        return count;
+    }
+
+    /**
+     * Reloads all cached bundles.  The new bundles are built in the
+     * background and swapped in per bundle name, so concurrent lookups
+     * never block and see either the old or the new bundles.
+     */
+    public void reloadBundles()
+    {
+        reloadBundles(bundles.keys());
+    }
+
+    /**
+     * Reloads the named bundles for all locales they are cached for,
+     * then refreshes the caches derived from them.
+     *
+     * @param names The names of the bundles to reload.
+     */
+    protected void reloadBundles(Collection<String> names)
+    {
+        reloadLock.lock();
+        try
+        {
+            ResourceBundle.clearCache();
+            if (bundleLoader != null)
+            {
+                ResourceBundle.clearCache(bundleLoader);
+            }
+            for (String name : names)
+            {
+                BoundedCache<Locale, ResourceBundle> cached = bundles.get(name);
+                if (cached == null)
+                {
+                    continue;
+                }
+                if (compactor != null)
+                {
+                    compactor.clear(name);
+                }
+                BoundedCache<Locale, ResourceBundle> reloaded =
+                    new BoundedCache<Locale, ResourceBundle>(localeCacheSize);
+                for (Locale locale : cached.keys())
+                {
+                    if (!reloaded.containsKey(locale))
+                    {
+                        ResourceBundle rb = loadBundle(name, locale, reloaded);
+                        reloaded.put(locale, rb);
+                        if (rb != MISSING_BUNDLE)
+                        {
+                            reloaded.putIfAbsent(rb.getLocale(), rb);
+                        }
+                    }
+                }
+                bundles.put(name, reloaded);
+            }
+            formats.clear();
+            catalogs.clear();
+            rebuildKeyIndexes();
+            generation++;
+            getLogger().info("Reloaded bundles " + names);
+        }
+        finally
+        {
+            reloadLock.unlock();
+        }
+    }
+
+    /**
+     * Reloads the bundles whose backing files have changed since the
+     * previous check.
+     */
+    void checkBundles()
+    {
+        try
+        {
+            List<String> changed = new ArrayList<String>();
+            for (String name : bundles.keys())
+            {
+                BoundedCache<Locale, ResourceBundle> bundlesByLocale = bundles.get(name);
+                if (bundlesByLocale != null
+                    && changeDetector.hasChanged(name, bundlesByLocale.keys()))
+                {
+                    changed.add(name);
+                }
+            }
+            if (!changed.isEmpty())
+            {
+                reloadBundles(changed);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            getLogger().error("Checking bundles for changes failed", e);
+        }
+    }
+
+    /**
+     * Brings the texts from the bundle source up to date and reloads
+     * the bundles whose texts changed.  Does nothing if no bundle
+     * source is configured.
+     *
+     * @throws IOException if the bundle source cannot be read
+     */
+    public void refreshBundleSource() throws IOException
+    {
+        if (sourceStore != null)
+        {
+            Set<String> changed = sourceStore.refresh();
+            if (!changed.isEmpty())
+            {
+                reloadBundles(changed);
+            }
+        }
+    }
+
+    /**
+     * Refreshes the texts from the bundle source, logging failures.
+     */
+    private void checkBundleSource()
+    {
+        try
+        {
+            refreshBundleSource();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            getLogger().error("Refreshing the bundle source failed", e);
+        }
+    }
+
+    /**
+     * Replaces each cached key index with one built from the current
+     * bundles.  Lookups keep using the old index until it is replaced.
+     */
+    private void rebuildKeyIndexes()
+    {
+        if (!useKeyIndex)
+        {
+            return;
+        }
+        Map<List<ResourceBundle>, KeyIndex> rebuilt = new HashMap<List<ResourceBundle>, KeyIndex>();
+        for (CacheKey k : keyIndexesByLocale.keys())
+        {
+            ResourceBundle rb = getBundleOrNull(k.bundleName, k.locale);
+            if (rb == null)
+            {
+                keyIndexesByLocale.remove(k);
+            }
+            else
+            {
+                keyIndexesByLocale.put(k, rebuilt.computeIfAbsent(
+                    getBundleChain(rb, k.bundleName, k.locale), KeyIndex::new));
+            }
+        }
+    }
+
+    /**
+     * Loads all default bundles for the default locale and the
+     * configured locales in parallel, and builds the key indexes if
+     * they are enabled.
+     *
+     * @throws ConfigurationException if a bundle is missing and
+     * startup should fail in this case
+     */
+    private void preloadBundles() throws ConfigurationException
+    {
+        long start = System.nanoTime();
+        List<Locale> locales = new ArrayList<Locale>(preloadLocales.size() + 1);
+        locales.add(defaultLocale);
+        for (Locale locale : preloadLocales)
+        {
+            if (!locales.contains(locale))
+            {
+                locales.add(locale);
+            }
+        }
+
+        List<CacheKey> tasks = new ArrayList<CacheKey>();
+        for (String name : bundleNames)
+        {
+            for (Locale locale : locales)
+            {
+                tasks.add(new CacheKey(name, locale, null));
+            }
+        }
+        List<CacheKey> missing = tasks.parallelStream()
+            .filter(k -> !preloadBundle(k.bundleName, k.locale))
+            .collect(Collectors.toList());
+
+        if (getLogger().isInfoEnabled())
+        {
+            getLogger().info("Preloaded " + (tasks.size() - missing.size())
+                + " of " + tasks.size() + " bundles in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        if (!missing.isEmpty())
+        {
+            String mesg = "Cannot preload bundles: " + missing;
+            if (failOnMissing)
+            {
+                throw new ConfigurationException(mesg);
+            }
+            getLogger().warn(mesg);
+        }
+    }
+
+    /**
+     * Loads a bundle into the cache, together with its key index if
+     * key indexes are enabled.
+     *
+     * @param bundleName Name of bundle.
+     * @param locale The locale.
+     * @return <code>true</code> if the bundle was found
+     */
+    private boolean preloadBundle(String bundleName, Locale locale)
+    {
+        ResourceBundle rb = getBundleOrNull(bundleName, locale);
+        if (rb != null && useKeyIndex)
+        {
+            getKeyIndex(rb, bundleName, locale);
+        }
+        return rb != null;
+    }
+    
     /**
      * Initialize list of default bundle names.
      *
@@ -281,82 +1113,353 @@ public class SimpleLocalizationServiceImpl
     @Override
 	public ResourceBundle getBundle(String bundleName, Locale locale)
     {
-        // Assure usable inputs.
-        bundleName =
-            (bundleName == null ? getDefaultBundleName() : bundleName.trim());
-        if (locale == null)
+        ResourceBundle rb = getBundleOrNull(bundleName, locale);
+        if (rb == null)
         {
-            locale = getDefaultLocale();
+            throw new MissingResourceException(
+                "Can't find bundle for base name " + bundleName
+                    + ", locale " + locale,
+                bundleName + "_" + locale, "");
         }
+        return rb;
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.SimpleLocalizationService#getBundleAsync(java.lang.String, java.util.Locale)
+     */
+    @Override
+    public CompletableFuture<ResourceBundle> getBundleAsync(String bundleName, Locale locale)
+    {
+        if (isCached(toBundleName(bundleName), locale))
+        {
+            return completed(() -> getBundle(bundleName, locale));
+        }
+        return loadAsync(() -> getBundle(bundleName, locale));
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.SimpleLocalizationService#getStringAsync(java.lang.String, java.util.Locale, java.lang.String)
+     */
+    @Override
+    public CompletableFuture<String> getStringAsync(String bundleName, Locale locale, String key)
+    {
+        if (isChainCached(toBundleName(bundleName), locale))
+        {
+            return completed(() -> getString(bundleName, locale, key));
+        }
+        return loadAsync(() -> getString(bundleName, locale, key));
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.SimpleLocalizationService#formatAsync(java.lang.String, java.util.Locale, java.lang.String, java.lang.Object[])
+     */
+    @Override
+    public CompletableFuture<String> formatAsync(String bundleName, Locale locale, String key, Object[] args)
+    {
+        String name = toBundleName(bundleName);
+        Locale formatLocale = (locale == null ? getDefaultLocale() : locale);
+        if (formats.containsKey(new CacheKey(name, getFormatLocale(formatLocale), key))
+            || isChainCached(name, locale))
+        {
+            return completed(() -> format(bundleName, locale, key, args));
+        }
+        return loadAsync(() -> format(bundleName, locale, key, args));
+    }
+
+    /**
+     * Runs a call which may need to load bundles on the executor.
+     *
+     * @param call The call.
+     * @return A future completed with the result or the exception of
+     * the call, or with an <code>IllegalStateException</code> if the
+     * service has been disposed.
+     */
+    private <T> CompletableFuture<T> loadAsync(Supplier<T> call)
+    {
+        Executor executor = getAsyncExecutor();
+        if (executor == null)
+        {
+            return CompletableFuture.failedFuture(
+                new IllegalStateException("The localization service has been disposed"));
+        }
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    /**
+     * Runs a call which does not need to load anything in the calling
+     * thread.
+     *
+     * @param call The call.
+     * @return A future completed with the result or the exception of
+     * the call.
+     */
+    private static <T> CompletableFuture<T> completed(Supplier<T> call)
+    {
+        try
+        {
+            return CompletableFuture.completedFuture(call.get());
+        }
+        catch (RuntimeException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Checks whether a bundle is in the cache, without loading it.
+     *
+     * @param bundleName Name of bundle.
+     * @param locale The locale (or <code>null</code> for the default
+     * locale).
+     * @return Whether the bundle, or the fact that it is missing, is
+     * cached.
+     */
+    private boolean isCached(String bundleName, Locale locale)
+    {
+        BoundedCache<Locale, ResourceBundle> bundlesByLocale = bundles.get(bundleName);
+        return bundlesByLocale != null && bundlesByLocale.containsKey(canonicalize(locale));
+    }
+
+    /**
+     * Checks whether a bundle and the default bundles are in the
+     * cache, so a lookup does not load anything.
+     *
+     * @param bundleName Name of bundle.
+     * @param locale The locale (or <code>null</code> for the default
+     * locale).
+     * @return Whether all bundles are cached.
+     */
+    private boolean isChainCached(String bundleName, Locale locale)
+    {
+        if (!isCached(bundleName, locale))
+        {
+            return false;
+        }
+        for (String name : bundleNames)
+        {
+            if (!isCached(name, locale))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method returns a ResourceBundle for the given bundle name
+     * and the given Locale, or <code>null</code> if no such bundle can
+     * be found.
+     *
+     * @param bundleName Name of bundle (or <code>null</code> for the
+     * default bundle).
+     * @param locale The locale (or <code>null</code> for the locale
+     * indicated by the default language and country).
+     * @return A localized ResourceBundle or <code>null</code>.
+     */
+    protected ResourceBundle getBundleOrNull(String bundleName, Locale locale)
+    {
+        // Assure usable inputs.
+        bundleName = toBundleName(bundleName);
+        locale = canonicalize(locale);
         // Find/retrieve/cache bundle.
-        ResourceBundle rb = null;
-        HashMap<?, ?> bundlesByLocale = (HashMap<?, ?>) bundles.get(bundleName);
-        if (bundlesByLocale != null)
+        BoundedCache<Locale, ResourceBundle> bundlesByLocale = bundles.get(bundleName);
+        if (bundlesByLocale == null)
         {
-            // Cache of bundles by locale for the named bundle exists.
-            // Check the cache for a bundle corresponding to locale.
-            rb = (ResourceBundle) bundlesByLocale.get(locale);
-            if (rb == null)
+            bundlesByLocale = bundles.computeIfAbsent(bundleName,
+                name -> new BoundedCache<Locale, ResourceBundle>(localeCacheSize));
+        }
+        ResourceBundle rb = bundlesByLocale.get(locale);
+        if (rb == null)
+        {
+            // Not yet cached.
+            rb = cacheBundle(bundleName, locale, bundlesByLocale);
+        }
+        return (rb == MISSING_BUNDLE ? null : rb);
+    }
+    
+    /**
+     * Normalizes a bundle name.
+     *
+     * @param bundleName Name of bundle (or <code>null</code> for the
+     * default bundle).
+     * @return The trimmed bundle name, or the name of the default
+     * bundle.
+     */
+    protected String toBundleName(String bundleName)
+    {
+        return (bundleName == null ? getDefaultBundleName() : bundleName.trim());
+    }
+
+    /**
+     * Maps a requested locale to the locale to look up and cache
+     * bundles for.  Locales with a language which is neither an ISO
+     * 639 code nor supported by the JDK are replaced by the default
+     * locale.  Scripts and variants the JDK does not support and
+     * unknown countries are dropped, the latter together with the
+     * variant, and so are all extensions, which bundle lookups ignore.
+     * This keeps made-up locales such as <code>en-US-x-random</code>
+     * from filling the bundle cache; bundles for variants other than
+     * those of the JDK and the default locale are not looked up.
+     *
+     * @param locale The requested locale (or <code>null</code> for
+     * the default locale).
+     * @return The locale to look up bundles for.
+     */
+    protected Locale canonicalize(Locale locale)
+    {
+        if (locale == null || !KNOWN_LANGUAGES.contains(locale.getLanguage()))
+        {
+            return getDefaultLocale();
+        }
+        String script = locale.getScript();
+        String country = locale.getCountry();
+        String variant = locale.getVariant();
+        boolean knownCountry = KNOWN_COUNTRIES.contains(country);
+        boolean knownVariant = KNOWN_VARIANTS.contains(variant)
+            || variant.equals(getDefaultLocale().getVariant());
+        if (KNOWN_SCRIPTS.contains(script) && knownCountry && knownVariant && !locale.hasExtensions())
+        {
+            return locale;
+        }
+        String language = locale.getLanguage();
+        if (!knownCountry)
+        {
+            return new Locale(language);
+        }
+        if (!knownVariant)
+        {
+            variant = "";
+        }
+        if (!KNOWN_SCRIPTS.contains(script) || script.isEmpty())
+        {
+            return new Locale(language, country, variant);
+        }
+        try
+        {
+            return new Locale.Builder().setLanguage(language).setScript(script)
+                .setRegion(country).setVariant(variant).build();
+        }
+        catch (IllformedLocaleException e)
+        {
+            // a JDK variant which is not a valid BCP 47 variant
+            return new Locale.Builder().setLanguage(language).setScript(script)
+                .setRegion(country).build();
+        }
+    }
+
+    /**
+     * Maps a requested locale to the locale to parse and format
+     * messages for.  This is the {@link #canonicalize(Locale)
+     * canonical} locale plus the Unicode extension keywords which
+     * change how numbers and dates are formatted, such as the
+     * numbering system in <code>th-TH-u-nu-thai</code>.  Requested
+     * locales differing only in other extensions share parsed
+     * messages but still format like the requested locale.
+     *
+     * @param locale The requested locale (or <code>null</code> for
+     * the default locale).
+     * @return The locale to format for.
+     */
+    Locale getFormatLocale(Locale locale)
+    {
+        Locale canonical = canonicalize(locale);
+        if (locale == null || !locale.hasExtensions()
+            || !canonical.getLanguage().equals(locale.getLanguage()))
+        {
+            return canonical;
+        }
+        Locale.Builder builder;
+        try
+        {
+            builder = new Locale.Builder().setLocale(canonical);
+        }
+        catch (IllformedLocaleException e)
+        {
+            // a JDK variant which is not a valid BCP 47 variant
+            return canonical;
+        }
+        boolean changed = false;
+        for (String keyword : FORMAT_KEYWORDS)
+        {
+            String type = locale.getUnicodeLocaleType(keyword);
+            if (type != null && !type.equals(canonical.getUnicodeLocaleType(keyword)))
             {
-                // Not yet cached.
-                rb = cacheBundle(bundleName, locale);
+                builder.setUnicodeLocaleKeyword(keyword, type);
+                changed = true;
             }
         }
-        else
+        return (changed ? builder.build() : canonical);
+    }
+
+    /**
+     * Caches the named bundle for fast lookups.  Only callers asking
+     * for the same bundle and locale wait for each other; lookups of
+     * other bundles or locales proceed without locking.  The bundle
+     * is loaded without holding a monitor, so virtual threads loading
+     * or waiting for a bundle do not pin their carrier threads.
+     *
+     * @param bundleName Name of bundle.
+     * @param locale The requested locale.
+     * @param bundlesByLocale The cache of the named bundle.
+     * @return a localized resource bundle or {@link #MISSING_BUNDLE}
+     * if none could be found
+     */
+    private ResourceBundle cacheBundle(
+        String bundleName,
+        Locale locale,
+        BoundedCache<Locale, ResourceBundle> bundlesByLocale)
+    {
+        ResourceBundle rb = bundlesByLocale.computeIfAbsent(locale,
+            l -> loadBundle(bundleName, l, bundlesByLocale));
+        if (rb != MISSING_BUNDLE)
         {
-            rb = cacheBundle(bundleName, locale);
+            // Make the bundle available under its own locale, too.
+            bundlesByLocale.putIfAbsent(rb.getLocale(), rb);
         }
         return rb;
     }
-    
+
     /**
-     * Caches the named bundle for fast lookups.  This operation is
-     * relatively expensive in terms of memory use, but is optimized
-     * for run-time speed in the usual case.
+     * Loads the named bundle for the requested locale, falling back
+     * to the defaults if necessary.
      *
-     * @param bundleName Name of bundle (or <code>null</code> for the
-     * default bundle).
-     * @param locale The locale (or <code>null</code> for the locale
-     * indicated by the default language and country).
-     * @throws MissingResourceException Bundle not found.
-     * @return a localized resource bundle
+     * @param bundleName Name of bundle.
+     * @param locale The requested locale.
+     * @param bundlesByLocale The cache of the named bundle.
+     * @return a localized resource bundle or {@link #MISSING_BUNDLE}
+     * if none could be found
      */
-    private synchronized ResourceBundle cacheBundle(
+    private ResourceBundle loadBundle(
         String bundleName,
-        Locale locale)
-        throws MissingResourceException
+        Locale locale,
+        BoundedCache<Locale, ResourceBundle> bundlesByLocale)
     {
-        HashMap<Locale, ResourceBundle> bundlesByLocale = (HashMap<Locale, ResourceBundle>) bundles.get(bundleName);
-        ResourceBundle rb =
-            (bundlesByLocale == null
-                ? null
-                : (ResourceBundle) bundlesByLocale.get(locale));
-        if (rb == null)
+        long start = System.nanoTime();
+        ResourceBundle rb;
+        try
         {
-            bundlesByLocale =
-                (bundlesByLocale == null
-                    ? new HashMap<Locale, ResourceBundle>(3)
-                    : new HashMap<Locale, ResourceBundle>(bundlesByLocale));
-            try
-            {
-                rb = ResourceBundle.getBundle(bundleName, locale);
-            }
-            catch (MissingResourceException e)
+            rb = lookupBundle(bundleName, locale);
+        }
+        catch (MissingResourceException e)
+        {
+            rb = findBundleByLocale(bundleName, locale, bundlesByLocale);
+            if (rb == null)
             {
-                rb = findBundleByLocale(bundleName, locale, bundlesByLocale);
-                if (rb == null)
-                {
-                    throw (MissingResourceException) e.fillInStackTrace();
-                }
+                rb = MISSING_BUNDLE;
             }
-            if (rb != null)
+        }
+        if (compactor != null && rb != MISSING_BUNDLE)
+        {
+            rb = compactor.compact(bundleName, rb);
+        }
+
+        LocalizationListener[] current = listeners;
+        if (current.length > 0)
+        {
+            long nanos = System.nanoTime() - start;
+            for (LocalizationListener listener : current)
             {
-                // Cache bundle.
-                bundlesByLocale.put(rb.getLocale(), rb);
-                HashMap<String, HashMap<Locale, ResourceBundle>> bundlesByName 
-                	= new HashMap<String, HashMap<Locale, ResourceBundle>>(bundles);
-                bundlesByName.put(bundleName, bundlesByLocale);
-                this.bundles = bundlesByName;
+                listener.bundleLoaded(bundleName, locale, nanos, rb != MISSING_BUNDLE);
             }
         }
         return rb;
@@ -388,7 +1491,7 @@ public class SimpleLocalizationServiceImpl
     private ResourceBundle findBundleByLocale(
         String bundleName,
         Locale locale,
-        Map<Locale, ResourceBundle> bundlesByLocale)
+        BoundedCache<Locale, ResourceBundle> bundlesByLocale)
     {
         ResourceBundle rb = null;
         if (StringUtils.isEmpty(locale.getCountry())
@@ -401,8 +1504,8 @@ public class SimpleLocalizationServiceImpl
              */
             Locale withDefaultCountry =
                 new Locale(locale.getLanguage(), defaultCountry);
-            rb = (ResourceBundle) bundlesByLocale.get(withDefaultCountry);
-            if (rb == null)
+            rb = bundlesByLocale.get(withDefaultCountry);
+            if (rb == null || rb == MISSING_BUNDLE)
             {
                 rb = getBundleIgnoreException(bundleName, withDefaultCountry);
             }
@@ -413,8 +1516,8 @@ public class SimpleLocalizationServiceImpl
         {
             Locale withDefaultLanguage =
                 new Locale(defaultLanguage, locale.getCountry());
-            rb = (ResourceBundle) bundlesByLocale.get(withDefaultLanguage);
-            if (rb == null)
+            rb = bundlesByLocale.get(withDefaultLanguage);
+            if (rb == null || rb == MISSING_BUNDLE)
             {
                 rb = getBundleIgnoreException(bundleName, withDefaultLanguage);
             }
@@ -428,8 +1531,26 @@ public class SimpleLocalizationServiceImpl
     }
     
     /**
-     * Retrieves the bundle using the
-     * <code>ResourceBundle.getBundle(String, Locale)</code> method,
+     * Loads a bundle through <code>ResourceBundle.getBundle()</code>,
+     * from the bundle source and the compiled catalog files if they
+     * are configured.
+     *
+     * @param bundleName Name of bundle.
+     * @param locale The locale.
+     * @return The bundle.
+     * @throws MissingResourceException if no bundle can be found
+     */
+    protected ResourceBundle lookupBundle(String bundleName, Locale locale)
+    {
+        if (bundleControl != null)
+        {
+            return ResourceBundle.getBundle(bundleName, locale, bundleLoader, bundleControl);
+        }
+        return ResourceBundle.getBundle(bundleName, locale);
+    }
+
+    /**
+     * Retrieves the bundle using {@link #lookupBundle(String, Locale)},
      * returning <code>null</code> instead of throwing
      * <code>MissingResourceException</code>.
      * 
@@ -444,7 +1565,7 @@ public class SimpleLocalizationServiceImpl
     {
         try
         {
-            return ResourceBundle.getBundle(bundleName, locale);
+            return lookupBundle(bundleName, locale);
         }
         catch (MissingResourceException ignored)
         {
@@ -486,35 +1607,14 @@ public class SimpleLocalizationServiceImpl
 	public String getString(String bundleName, Locale locale, String key)
       throws MissingResourceException
     {
-        String value = null;
+        bundleName = toBundleName(bundleName);
         if (locale == null)
         {
             locale = getDefaultLocale();
         }
         // Look for text in requested bundle.
         ResourceBundle rb = getBundle(bundleName, locale);
-        value = getStringOrNull(rb, key);
-        // Look for text in list of default bundles.
-        if (value == null && bundleNames.length > 0)
-        {
-            String name;
-            for (int i = 0; i < bundleNames.length; i++)
-            {
-                name = bundleNames[i];
-                //System.out.println("getString(): name=" + name +
-                //                   ", locale=" + locale + ", i=" + i);
-                if (!name.equals(bundleName))
-                {
-                    rb = getBundle(name, locale);
-                    value = getStringOrNull(rb, key);
-                    if (value != null)
-                    {
-                        locale = rb.getLocale();
-                        break;
-                    }
-                }
-            }
-        }
+        String value = findString(rb, bundleName, locale, key);
         if (value == null)
         {
             String loc = locale.toString();
@@ -533,6 +1633,282 @@ public class SimpleLocalizationServiceImpl
         }
         return value;
     }
+
+    /**
+     * {@link org.apache.fulcrum.localization.SimpleLocalizationService#tryGetString(String, Locale, String)}
+     */
+    @Override
+    public Optional<String> tryGetString(String bundleName, Locale locale, String key)
+    {
+        bundleName = toBundleName(bundleName);
+        if (locale == null)
+        {
+            locale = getDefaultLocale();
+        }
+        ResourceBundle rb = getBundleOrNull(bundleName, locale);
+        return Optional.ofNullable(
+            rb == null ? null : findString(rb, bundleName, locale, key));
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.SimpleLocalizationService#getMessageCatalog(java.lang.String, java.util.Locale)
+     */
+    @Override
+    public MessageCatalog getMessageCatalog(String bundleName, Locale locale)
+    {
+        String name = toBundleName(bundleName);
+        return catalogs.get(new CacheKey(name, canonicalize(locale), null),
+            k -> new MessageCatalog(k.bundleName, k.locale,
+                getStringsWithPrefix(k.bundleName, k.locale, "")));
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.SimpleLocalizationService#getMessageHandle(java.lang.String, java.lang.String)
+     */
+    @Override
+    public MessageHandle getMessageHandle(String bundleName, String key)
+    {
+        return new MessageHandle(this, toBundleName(bundleName), key);
+    }
+
+    /**
+     * @return The number of reloads so far.
+     */
+    int getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Looks for text in the requested bundle first, then in the list
+     * of default bundles.  The search ends at the first default bundle
+     * which cannot be found for the locale.
+     *
+     * @param rb The requested bundle.
+     * @param bundleName The name of the requested bundle.
+     * @param locale Locale to get text for.
+     * @param key Name of the text to retrieve.
+     * @return Localized text or <code>null</code> if none was found.
+     */
+    private String findString(ResourceBundle rb, String bundleName, Locale locale, String key)
+    {
+        String value;
+        int depth = 0;
+        if (useKeyIndex)
+        {
+            value = getKeyIndex(rb, bundleName, locale).get(key);
+            depth = -1;
+        }
+        else
+        {
+            value = getStringOrNull(rb, key);
+            // Look for text in list of default bundles.
+            for (int i = 0; value == null && i < bundleNames.length; i++)
+            {
+                String name = bundleNames[i];
+                if (!name.equals(bundleName))
+                {
+                    rb = getBundleOrNull(name, locale);
+                    if (rb == null)
+                    {
+                        break;
+                    }
+                    depth++;
+                    value = getStringOrNull(rb, key);
+                }
+            }
+        }
+        fireLookup(listeners, bundleName, locale, key, value, depth);
+        return value;
+    }
+
+    /**
+     * Notifies the listeners about a lookup.
+     *
+     * @param current The listeners.
+     * @param bundleName The name of the requested bundle.
+     * @param locale The requested locale.
+     * @param key The key looked up.
+     * @param value The text found, or <code>null</code>.
+     * @param depth The position in the bundle chain the text was
+     * found at, <code>-1</code> if unknown.
+     */
+    private static void fireLookup(LocalizationListener[] current,
+        String bundleName, Locale locale, String key, String value, int depth)
+    {
+        for (LocalizationListener listener : current)
+        {
+            if (value == null)
+            {
+                listener.lookupMiss(bundleName, locale, key);
+            }
+            else
+            {
+                listener.lookupHit(bundleName, locale, key, depth);
+            }
+        }
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.SimpleLocalizationService#getStrings(java.lang.String, java.util.Locale, java.util.Collection)
+     */
+    @Override
+    public Map<String, String> getStrings(String bundleName, Locale locale, Collection<String> keys)
+    {
+        bundleName = toBundleName(bundleName);
+        if (locale == null)
+        {
+            locale = getDefaultLocale();
+        }
+        ResourceBundle rb = getBundle(bundleName, locale);
+        Map<String, String> index = null;
+        List<ResourceBundle> chain = null;
+        if (useKeyIndex)
+        {
+            index = getKeyIndex(rb, bundleName, locale);
+        }
+        else
+        {
+            chain = getBundleChain(rb, bundleName, locale);
+        }
+
+        LocalizationListener[] current = listeners;
+        Map<String, String> values = new LinkedHashMap<String, String>(keys.size() * 4 / 3 + 1);
+        for (String key : keys)
+        {
+            String value = null;
+            int depth = -1;
+            if (index != null)
+            {
+                value = index.get(key);
+            }
+            else
+            {
+                for (int i = 0; value == null && i < chain.size(); i++)
+                {
+                    value = getStringOrNull(chain.get(i), key);
+                    depth = i;
+                }
+            }
+            if (value != null)
+            {
+                values.put(key, value);
+            }
+            fireLookup(current, bundleName, locale, key, value, depth);
+        }
+        return values;
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.SimpleLocalizationService#getStringsWithPrefix(java.lang.String, java.util.Locale, java.lang.String)
+     */
+    @Override
+    public SortedMap<String, String> getStringsWithPrefix(String bundleName, Locale locale, String prefix)
+    {
+        bundleName = toBundleName(bundleName);
+        if (locale == null)
+        {
+            locale = getDefaultLocale();
+        }
+        ResourceBundle rb = getBundle(bundleName, locale);
+        SortedMap<String, String> values = new TreeMap<String, String>();
+        if (useKeyIndex)
+        {
+            for (Map.Entry<String, String> entry : getKeyIndex(rb, bundleName, locale).entrySet())
+            {
+                if (entry.getKey().startsWith(prefix))
+                {
+                    values.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        else
+        {
+            // Later bundles first, so earlier ones override them.
+            List<ResourceBundle> chain = getBundleChain(rb, bundleName, locale);
+            for (int i = chain.size() - 1; i >= 0; i--)
+            {
+                ResourceBundle chained = chain.get(i);
+                for (String key : chained.keySet())
+                {
+                    if (key.startsWith(prefix))
+                    {
+                        Object value = chained.getObject(key);
+                        if (value instanceof String)
+                        {
+                            values.put(key, (String) value);
+                        }
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Retrieves the flattened index of all texts which
+     * {@link #findString(ResourceBundle, String, Locale, String)} can
+     * find for the requested bundle and locale, building it on first
+     * use.
+     *
+     * @param rb The requested bundle.
+     * @param bundleName The name of the requested bundle.
+     * @param locale Locale to get text for.
+     * @return An immutable map of keys to localized text.
+     */
+    private Map<String, String> getKeyIndex(ResourceBundle rb, String bundleName, Locale locale)
+    {
+        return keyIndexesByLocale.get(new CacheKey(bundleName, locale, null),
+            k -> findKeyIndex(getBundleChain(rb, bundleName, locale))).texts;
+    }
+
+    /**
+     * Finds a cached key index built from a chain of bundles, or
+     * builds a new one.  Indexes are only shared through the bounded
+     * cache, so an index is dropped with the last locale using it.
+     *
+     * @param chain The bundles in order of precedence.
+     * @return The key index.
+     */
+    private KeyIndex findKeyIndex(List<ResourceBundle> chain)
+    {
+        for (KeyIndex index : keyIndexesByLocale.values())
+        {
+            if (index.chain.equals(chain))
+            {
+                return index;
+            }
+        }
+        return new KeyIndex(chain);
+    }
+
+    /**
+     * Collects the bundles searched for text, in order of precedence.
+     *
+     * @param rb The requested bundle.
+     * @param bundleName The name of the requested bundle.
+     * @param locale Locale to get text for.
+     * @return The requested bundle followed by the default bundles up
+     * to the first one which cannot be found.
+     */
+    private List<ResourceBundle> getBundleChain(ResourceBundle rb, String bundleName, Locale locale)
+    {
+        List<ResourceBundle> chain = new ArrayList<ResourceBundle>(bundleNames.length + 1);
+        chain.add(rb);
+        for (String name : bundleNames)
+        {
+            if (!name.equals(bundleName))
+            {
+                rb = getBundleOrNull(name, locale);
+                if (rb == null)
+                {
+                    break;
+                }
+                chain.add(rb);
+            }
+        }
+        return chain;
+    }
     
     /**
      * Returns the value for the key in the default bundle and the default locale.
@@ -549,8 +1925,9 @@ public class SimpleLocalizationServiceImpl
     
     /**
      * Gets localized text from a bundle if it's there.  Otherwise,
-     * returns <code>null</code> (ignoring a possible
-     * <code>MissingResourceException</code>).
+     * returns <code>null</code>.  The bundle's key set is checked
+     * first, so a missing key does not cost a
+     * <code>MissingResourceException</code>.
      * 
      * @param rb resource bundle 
      * @param key The key to retrieve the value for.
@@ -558,16 +1935,9 @@ public class SimpleLocalizationServiceImpl
      */
     protected final String getStringOrNull(ResourceBundle rb, String key)
     {
-        if (rb != null)
+        if (rb != null && rb.containsKey(key))
         {
-            try
-            {
-                return rb.getString(key);
-            }
-            catch (MissingResourceException ignored)
-            {
-                // ignore
-            }
+            return rb.getString(key);
         }
         return null;
     }
@@ -612,6 +1982,9 @@ public class SimpleLocalizationServiceImpl
      * If <code>locale</code> is <code>null</code>, {@link #getDefaultLocale()} will be checked.
      * If <code>bundleName</code> is <code>null</code>, {@link #getDefaultBundleName()} will be checked (cft. {@link #getBundle(String, Locale)}.
      *
+     * The parsed <code>MessageFormat</code> is cached per bundle name,
+     * resolved locale and key, so the pattern is only parsed once.
+     *
      * @return Localized, formatted text identified by
      * <code>key</code>.
      */
@@ -625,11 +1998,154 @@ public class SimpleLocalizationServiceImpl
         // When formatting Date objects and such, MessageFormat
         // cannot have a null Locale.
         Locale formatLocale = (locale == null) ? getDefaultLocale() : locale; 
-        String value = getString(bundleName, locale, key);
+        String name = toBundleName(bundleName);
         
         Object[] formatArgs = (args == null) ? NO_ARGS : args;
         
-        MessageFormat messageFormat = new MessageFormat(value, formatLocale);
-        return messageFormat.format(formatArgs);
+        LocalizationListener[] current = listeners;
+        long start = (current.length > 0 ? System.nanoTime() : 0);
+        String formatted = getCompiledMessage(name, formatLocale, key).format(formatArgs);
+        fireFormatted(current, start, name, formatLocale, key);
+        return formatted;
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.SimpleLocalizationService#formatTo(java.lang.StringBuilder, java.lang.String, java.util.Locale, java.lang.String, org.apache.fulcrum.localization.MessageArguments)
+     */
+    @Override
+    public StringBuilder formatTo(StringBuilder out, String bundleName, Locale locale, String key,
+        MessageArguments args)
+    {
+        try
+        {
+            formatTo((Appendable) out, bundleName, locale, key, args);
+        }
+        catch (IOException e)
+        {
+            // a StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return out;
+    }
+
+    /**
+     * @see org.apache.fulcrum.localization.SimpleLocalizationService#formatTo(java.lang.Appendable, java.lang.String, java.util.Locale, java.lang.String, org.apache.fulcrum.localization.MessageArguments)
+     */
+    @Override
+    public Appendable formatTo(Appendable out, String bundleName, Locale locale, String key,
+        MessageArguments args) throws IOException
+    {
+        Locale formatLocale = (locale == null) ? getDefaultLocale() : locale;
+        String name = toBundleName(bundleName);
+
+        LocalizationListener[] current = listeners;
+        long start = (current.length > 0 ? System.nanoTime() : 0);
+        getCompiledMessage(name, formatLocale, key).formatTo(out,
+            (args == null) ? new MessageArguments() : args);
+        fireFormatted(current, start, name, formatLocale, key);
+        return out;
+    }
+
+    /**
+     * Retrieves the parsed format of a message, parsing it on first
+     * use.  Requested locales with the same locale to format for, e.g.
+     * ones differing only in private use extensions, share the parsed
+     * format.
+     *
+     * @param bundleName The resolved bundle name.
+     * @param locale The requested locale.
+     * @param key The key of the message.
+     * @return The parsed format.
+     */
+    private MessagePattern getCompiledMessage(String bundleName, Locale locale, String key)
+    {
+        return formats.get(new CacheKey(bundleName, getFormatLocale(locale), key),
+            k -> compileMessage(getString(k.bundleName, k.locale, k.key), k.locale));
+    }
+
+    /**
+     * Parses a message pattern in the configured syntax.
+     *
+     * @param pattern The message pattern.
+     * @param locale The locale to format for.
+     * @return The parsed pattern.
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    MessagePattern compileMessage(String pattern, Locale locale)
+    {
+        LocaleFormats localeFormats = getLocaleFormats(locale);
+        return icuSyntax ? new IcuMessage(pattern, localeFormats)
+            : new CompiledMessage(pattern, localeFormats);
+    }
+
+    /**
+     * Retrieves the number and date formatters shared by the messages
+     * of a locale.
+     *
+     * @param locale The locale to format for.
+     * @return The formatters.
+     */
+    LocaleFormats getLocaleFormats(Locale locale)
+    {
+        return localeFormats.get(locale, LocaleFormats::new);
+    }
+
+    /**
+     * Notifies the listeners of a formatted message.
+     *
+     * @param current The listeners at the start of formatting.
+     * @param start The start of formatting in nanoseconds.
+     * @param bundleName The resolved bundle name.
+     * @param locale The locale formatted for.
+     * @param key The key of the message.
+     */
+    private static void fireFormatted(LocalizationListener[] current, long start,
+        String bundleName, Locale locale, String key)
+    {
+        if (current.length > 0)
+        {
+            long nanos = System.nanoTime() - start;
+            for (LocalizationListener listener : current)
+            {
+                listener.messageFormatted(bundleName, locale, key, nanos);
+            }
+        }
+    }
+
+    /**
+     * The texts of a chain of bundles merged into one map.
+     */
+    private static final class KeyIndex
+    {
+        /** The bundles the index was built from. */
+        final List<ResourceBundle> chain;
+
+        /** An immutable map of keys to localized text. */
+        final Map<String, String> texts;
+
+        /**
+         * Merges a chain of bundles.  Earlier bundles take precedence
+         * over later ones.
+         *
+         * @param chain The bundles in order of precedence.
+         */
+        KeyIndex(List<ResourceBundle> chain)
+        {
+            Map<String, String> index = new HashMap<String, String>();
+            for (int i = chain.size() - 1; i >= 0; i--)
+            {
+                ResourceBundle rb = chain.get(i);
+                for (String key : rb.keySet())
+                {
+                    Object value = rb.getObject(key);
+                    if (value instanceof String)
+                    {
+                        index.put(key, (String) value);
+                    }
+                }
+            }
+            this.chain = chain;
+            this.texts = Map.copyOf(index);
+        }
     }
 }
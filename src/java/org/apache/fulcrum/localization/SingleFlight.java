@@ -0,0 +1,132 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Makes sure only one thread at a time loads the value for a key.
+ * Threads asking for a key which is being loaded wait for the result
+ * of the running load instead of starting their own.
+ *
+ * <p>
+ * Loads run in the calling thread without holding any monitor or lock,
+ * so loads of different keys run in parallel, and waiting threads park
+ * on a future rather than block on a monitor.  This keeps virtual
+ * threads from pinning their carrier threads while bundles are read.
+ * </p>
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ *
+ * @version $Id$
+ */
+final class SingleFlight<K, V>
+{
+    /**
+     * Loads a value.
+     *
+     * @param <V> the value type
+     * @param <E> the exception thrown if loading fails
+     */
+    @FunctionalInterface
+    interface Loader<V, E extends Exception>
+    {
+        /**
+         * @return the value
+         * @throws E if loading fails
+         */
+        V load() throws E;
+    }
+
+    /** The running loads. */
+    private final ConcurrentMap<K, CompletableFuture<V>> running =
+        new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+    /**
+     * Loads the value for a key, or waits for the load of another
+     * thread to finish.  The loader should check whether the value has
+     * been loaded in the meantime.
+     *
+     * @param <E> the exception thrown if loading fails
+     * @param key the key
+     * @param loader loads the value
+     * @return the value loaded by this or another thread
+     * @throws E if loading fails, in this or the other thread
+     */
+    <E extends Exception> V load(K key, Loader<V, E> loader) throws E
+    {
+        CompletableFuture<V> future = new CompletableFuture<V>();
+        CompletableFuture<V> other = running.putIfAbsent(key, future);
+        if (other != null)
+        {
+            return await(other);
+        }
+        try
+        {
+            V value = loader.load();
+            future.complete(value);
+            return value;
+        }
+        catch (Throwable t)
+        {
+            future.completeExceptionally(t);
+            throw t;
+        }
+        finally
+        {
+            running.remove(key, future);
+        }
+    }
+
+    /**
+     * Waits for the load of another thread.
+     *
+     * @param <E> the exception thrown if loading fails
+     * @param future the result of the other load
+     * @return the value
+     * @throws E if the other load failed
+     */
+    @SuppressWarnings("unchecked")
+    private static <V, E extends Exception> V await(CompletableFuture<V> future) throws E
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            // The loader can only throw E besides unchecked exceptions.
+            throw (E) cause;
+        }
+    }
+}
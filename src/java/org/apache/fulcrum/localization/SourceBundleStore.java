@@ -0,0 +1,279 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the texts loaded from a {@link BundleSource} in memory.  The
+ * texts of a locale are loaded at once on first use and refreshed on
+ * request, by applying the changes since the last refresh if the
+ * source tracks versions.
+ *
+ * @version $Id$
+ */
+final class SourceBundleStore
+{
+    /** The source of the texts. */
+    private final BundleSource source;
+
+    /** The immutable texts keyed by locale, bundle name and key. */
+    private final ConcurrentMap<Locale, Map<String, Map<String, String>>> texts =
+        new ConcurrentHashMap<Locale, Map<String, Map<String, String>>>();
+
+    /** The locales being loaded. */
+    private final SingleFlight<Locale, Map<String, Map<String, String>>> loads =
+        new SingleFlight<Locale, Map<String, Map<String, String>>>();
+
+    /**
+     * Guards the version and serializes refreshes.  A lock rather than
+     * a monitor, as it is held while reading the source.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The version of the texts, <code>null</code> before the first load. */
+    private Long version = null;
+
+    /** The number of refreshes so far, to detect those during a load. */
+    private long refreshes = 0;
+
+    /**
+     * Creates a store.
+     *
+     * @param source The source of the texts.
+     */
+    SourceBundleStore(BundleSource source)
+    {
+        this.source = source;
+    }
+
+    /**
+     * Retrieves the texts of a bundle for exactly one locale, loading
+     * all bundles for the locale if it is used for the first time.
+     *
+     * @param bundleName The name of the bundle.
+     * @param locale The locale.
+     * @return The texts, or <code>null</code> if the source has none
+     * for the bundle and locale.
+     * @throws IOException if the source cannot be read
+     */
+    Map<String, String> getTexts(String bundleName, Locale locale) throws IOException
+    {
+        Map<String, Map<String, String>> bundles = texts.get(locale);
+        if (bundles == null)
+        {
+            bundles = loads.load(locale, () ->
+            {
+                Map<String, Map<String, String>> loaded = texts.get(locale);
+                return (loaded != null ? loaded : load(locale));
+            });
+        }
+        return bundles.get(bundleName);
+    }
+
+    /**
+     * Loads and stores the texts of a locale.  The version is taken
+     * before the first load, so changes made while loading are fetched
+     * again by the next refresh.  A refresh running meanwhile skips the
+     * locale, so its changes are applied when the texts are stored.
+     *
+     * @param locale The locale.
+     * @return The immutable texts keyed by bundle name and key.
+     * @throws IOException if the source cannot be read
+     */
+    private Map<String, Map<String, String>> load(Locale locale) throws IOException
+    {
+        long loadVersion;
+        long loadRefreshes;
+        lock.lock();
+        try
+        {
+            if (version == null)
+            {
+                version = source.getVersion();
+            }
+            loadVersion = version;
+            loadRefreshes = refreshes;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        Map<String, Map<String, String>> loaded = copyOf(source.load(locale));
+
+        lock.lock();
+        try
+        {
+            if (refreshes != loadRefreshes)
+            {
+                if (loadVersion == BundleSource.NO_VERSION)
+                {
+                    loaded = copyOf(source.load(locale));
+                }
+                else
+                {
+                    Map<String, Map<String, String>> copy = new HashMap<String, Map<String, String>>(loaded);
+                    for (BundleChange change : source.getChanges(loadVersion))
+                    {
+                        if (locale.equals(change.getLocale()))
+                        {
+                            apply(copy, change);
+                        }
+                    }
+                    loaded = copyOf(copy);
+                }
+            }
+            texts.put(locale, loaded);
+            return loaded;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Brings the texts of the loaded locales up to date.
+     *
+     * @return The names of the bundles whose texts changed.
+     * @throws IOException if the source cannot be read
+     */
+    Set<String> refresh() throws IOException
+    {
+        lock.lock();
+        try
+        {
+            return refreshLocked();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Brings the texts of the loaded locales up to date while holding
+     * the lock.
+     *
+     * @return The names of the bundles whose texts changed.
+     * @throws IOException if the source cannot be read
+     */
+    private Set<String> refreshLocked() throws IOException
+    {
+        Set<String> changed = new HashSet<String>();
+        if (version == null)
+        {
+            // Nothing loaded yet.
+            return changed;
+        }
+        refreshes++;
+        long current = source.getVersion();
+        if (current == BundleSource.NO_VERSION)
+        {
+            for (Locale locale : texts.keySet())
+            {
+                Map<String, Map<String, String>> loaded = copyOf(source.load(locale));
+                Map<String, Map<String, String>> previous = texts.put(locale, loaded);
+                Set<String> names = new HashSet<String>(loaded.keySet());
+                names.addAll(previous.keySet());
+                for (String name : names)
+                {
+                    if (!Objects.equals(loaded.get(name), previous.get(name)))
+                    {
+                        changed.add(name);
+                    }
+                }
+            }
+        }
+        else if (current != version)
+        {
+            Map<Locale, Map<String, Map<String, String>>> updated =
+                new HashMap<Locale, Map<String, Map<String, String>>>();
+            for (BundleChange change : source.getChanges(version))
+            {
+                Map<String, Map<String, String>> bundles = texts.get(change.getLocale());
+                if (bundles == null)
+                {
+                    // The locale has not been used yet.
+                    continue;
+                }
+                apply(updated.computeIfAbsent(
+                    change.getLocale(), l -> new HashMap<String, Map<String, String>>(bundles)), change);
+                changed.add(change.getBundleName());
+            }
+            for (Map.Entry<Locale, Map<String, Map<String, String>>> entry : updated.entrySet())
+            {
+                texts.put(entry.getKey(), copyOf(entry.getValue()));
+            }
+            version = current;
+        }
+        return changed;
+    }
+
+    /**
+     * Applies a change to a copy of the texts of a locale.
+     *
+     * @param bundles The texts keyed by bundle name and key, whose
+     * bundles are replaced rather than changed.
+     * @param change The change.
+     */
+    private static void apply(Map<String, Map<String, String>> bundles, BundleChange change)
+    {
+        Map<String, String> bundle = new HashMap<String, String>(
+            bundles.getOrDefault(change.getBundleName(), Map.of()));
+        if (change.getValue() == null)
+        {
+            bundle.remove(change.getKey());
+        }
+        else
+        {
+            bundle.put(change.getKey(), change.getValue());
+        }
+        bundles.put(change.getBundleName(), bundle);
+    }
+
+    /**
+     * Copies texts into immutable maps, leaving out empty bundles.
+     *
+     * @param bundles The texts keyed by bundle name and key.
+     * @return The copy.
+     */
+    private static Map<String, Map<String, String>> copyOf(Map<String, Map<String, String>> bundles)
+    {
+        Map<String, Map<String, String>> copy = new HashMap<String, Map<String, String>>();
+        for (Map.Entry<String, Map<String, String>> entry : bundles.entrySet())
+        {
+            if (!entry.getValue().isEmpty())
+            {
+                copy.put(entry.getKey(), Map.copyOf(entry.getValue()));
+            }
+        }
+        return Map.copyOf(copy);
+    }
+}
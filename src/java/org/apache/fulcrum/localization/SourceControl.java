@@ -0,0 +1,173 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+/**
+ * Loads bundles from the texts of a {@link BundleSource}, falling back
+ * to another control for bundles the source does not have.  Where the
+ * other control has a bundle for the same locale, too, the texts of
+ * the source override its texts one by one.
+ *
+ * @version $Id$
+ */
+final class SourceControl extends ResourceBundle.Control
+{
+    /** The format of bundles from a source. */
+    static final String FORMAT_SOURCE = "fulcrum.source";
+
+    /** The texts of the source. */
+    private final SourceBundleStore store;
+
+    /** The control to fall back to. */
+    private final ResourceBundle.Control fallback;
+
+    /**
+     * Creates a control.
+     *
+     * @param store The texts of the source.
+     * @param fallback The control to fall back to.
+     */
+    SourceControl(SourceBundleStore store, ResourceBundle.Control fallback)
+    {
+        this.store = store;
+        this.fallback = fallback;
+    }
+
+    /**
+     * @see java.util.ResourceBundle.Control#getFormats(java.lang.String)
+     */
+    @Override
+    public List<String> getFormats(String baseName)
+    {
+        List<String> formats = new ArrayList<String>();
+        formats.add(FORMAT_SOURCE);
+        formats.addAll(fallback.getFormats(baseName));
+        return formats;
+    }
+
+    /**
+     * @see java.util.ResourceBundle.Control#newBundle(java.lang.String, java.util.Locale, java.lang.String, java.lang.ClassLoader, boolean)
+     */
+    @Override
+    public ResourceBundle newBundle(String baseName, Locale locale, String format,
+        ClassLoader loader, boolean reload)
+        throws IllegalAccessException, InstantiationException, IOException
+    {
+        if (FORMAT_SOURCE.equals(format))
+        {
+            Map<String, String> texts = store.getTexts(baseName, locale);
+            if (texts == null)
+            {
+                return null;
+            }
+            ResourceBundle base = null;
+            for (String fallbackFormat : fallback.getFormats(baseName))
+            {
+                base = fallback.newBundle(baseName, locale, fallbackFormat, loader, reload);
+                if (base != null)
+                {
+                    break;
+                }
+            }
+            return new SourceResourceBundle(locale, texts, base);
+        }
+        return fallback.newBundle(baseName, locale, format, loader, reload);
+    }
+
+    /**
+     * A bundle holding texts from a source.
+     */
+    private static final class SourceResourceBundle extends ResourceBundle
+    {
+        /** The locale of the texts. */
+        private final Locale locale;
+
+        /** The immutable texts. */
+        private final Map<String, String> texts;
+
+        /** The bundle of the same locale the texts override, or <code>null</code>. */
+        private final ResourceBundle base;
+
+        /** The keys of the texts and the base bundle. */
+        private final Set<String> keys;
+
+        SourceResourceBundle(Locale locale, Map<String, String> texts, ResourceBundle base)
+        {
+            this.locale = locale;
+            this.texts = texts;
+            this.base = base;
+            if (base == null)
+            {
+                keys = texts.keySet();
+            }
+            else
+            {
+                Set<String> all = new LinkedHashSet<String>(texts.keySet());
+                all.addAll(base.keySet());
+                keys = Collections.unmodifiableSet(all);
+            }
+        }
+
+        @Override
+        public Locale getLocale()
+        {
+            return locale;
+        }
+
+        @Override
+        protected Object handleGetObject(String key)
+        {
+            Object value = texts.get(key);
+            if (value == null && base != null && base.containsKey(key))
+            {
+                value = base.getObject(key);
+            }
+            return value;
+        }
+
+        @Override
+        protected Set<String> handleKeySet()
+        {
+            return keys;
+        }
+
+        @Override
+        public Enumeration<String> getKeys()
+        {
+            Set<String> all = new LinkedHashSet<String>(keys);
+            if (parent != null)
+            {
+                all.addAll(parent.keySet());
+            }
+            return Collections.enumeration(all);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.avalon.framework.logger.NullLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks parsing of <code>Accept-Language</code> headers, both
+ * with the bare tokenizer and through the caching service.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocaleParsingBenchmark
+{
+    /** Headers as sent by common browsers. */
+    private static final String[] HEADERS =
+    {
+        "en-US,en;q=0.9",
+        "de-DE,de;q=0.9,en-US;q=0.8,en;q=0.7",
+        "fr-FR,fr;q=0.9,en-US;q=0.8,en;q=0.7",
+        "en-GB,en-US;q=0.9,en;q=0.8",
+        "es-ES,es;q=0.9",
+        "zh-CN,zh;q=0.9,en;q=0.8",
+        "zh-Hant-TW,zh-TW;q=0.9,zh;q=0.8,en-US;q=0.7,en;q=0.6",
+        "ja,en-US;q=0.9,en;q=0.8",
+        "pt-BR,pt;q=0.9,en-US;q=0.8,en;q=0.7",
+        "ko-KR,ko;q=0.9,en-US;q=0.8,en;q=0.7",
+        "ru-RU,ru;q=0.9,en-US;q=0.8,en;q=0.7",
+        "nl-NL,nl;q=0.9,en-US;q=0.8,en;q=0.7,de;q=0.6",
+        "en",
+        "*"
+    };
+
+    private LocalizationService service;
+
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        DefaultConfiguration conf = new DefaultConfiguration("localization");
+        conf.setAttribute("locale-default-language", "en");
+        conf.setAttribute("locale-default-country", "US");
+        DefaultConfiguration bundles = new DefaultConfiguration("bundles");
+        DefaultConfiguration bundle = new DefaultConfiguration("bundle");
+        bundle.setValue("org.apache.fulcrum.localization.BarBundle");
+        bundles.addChild(bundle);
+        conf.addChild(bundles);
+
+        DefaultLocalizationService impl = new DefaultLocalizationService();
+        impl.enableLogging(new NullLogger());
+        impl.configure(conf);
+        impl.initialize();
+        service = impl;
+    }
+
+    private String nextHeader()
+    {
+        String header = HEADERS[next];
+        next = (next + 1) % HEADERS.length;
+        return header;
+    }
+
+    @Benchmark
+    public void tokenizeAll(Blackhole bh)
+    {
+        LocaleTokenizer tok = new LocaleTokenizer(nextHeader());
+        while (tok.hasNext())
+        {
+            bh.consume(tok.next());
+        }
+    }
+
+    @Benchmark
+    public Locale getLocale()
+    {
+        return service.getLocale(nextHeader());
+    }
+
+    @Benchmark
+    public Locale negotiateLocale()
+    {
+        return service.negotiateLocale(nextHeader(), null);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Locale getLocaleContended()
+    {
+        return service.getLocale(HEADERS[1]);
+    }
+}
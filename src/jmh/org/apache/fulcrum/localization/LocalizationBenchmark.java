@@ -0,0 +1,215 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.avalon.framework.logger.NullLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the lookup and formatting hot paths of the localization
+ * service, using the bundles of the unit tests.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalizationBenchmark
+{
+    private static final String BAR_BUNDLE = "org.apache.fulcrum.localization.BarBundle";
+
+    private static final Locale EN_US = new Locale("en", "US");
+
+    private static final Locale KO_KR = new Locale("ko", "KR");
+
+    /** Whether the service uses the flattened key index. */
+    @Param({ "false", "true" })
+    public String keyIndex;
+
+    /** Whether the service caches bundles in their compact form. */
+    @Param({ "false", "true" })
+    public String compactBundles;
+
+    private LocalizationService service;
+
+    private MessageHandle fallbackHandle;
+
+    private MessageHandle formatHandle;
+
+    private final Object[] args = { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+    private final MessageArguments arguments = new MessageArguments();
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    private final List<String> keys = Arrays.asList("key1", "key2", "key3", "key4");
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        DefaultConfiguration conf = new DefaultConfiguration("localization");
+        conf.setAttribute("locale-default-language", "en");
+        conf.setAttribute("locale-default-country", "US");
+        conf.setAttribute("key-index", keyIndex);
+        conf.setAttribute("compact-bundles", compactBundles);
+        DefaultConfiguration bundles = new DefaultConfiguration("bundles");
+        for (String name : new String[] {
+            BAR_BUNDLE, "org.apache.fulcrum.localization.FooBundle" })
+        {
+            DefaultConfiguration bundle = new DefaultConfiguration("bundle");
+            bundle.setValue(name);
+            bundles.addChild(bundle);
+        }
+        conf.addChild(bundles);
+
+        DefaultLocalizationService impl = new DefaultLocalizationService();
+        impl.enableLogging(new NullLogger());
+        impl.configure(conf);
+        impl.initialize();
+        service = impl;
+        fallbackHandle = service.getMessageHandle(BAR_BUNDLE, "key4");
+        formatHandle = service.getMessageHandle(BAR_BUNDLE, "format1");
+    }
+
+    @Benchmark
+    public String getStringHit()
+    {
+        return service.getString(BAR_BUNDLE, EN_US, "key1");
+    }
+
+    @Benchmark
+    public String getStringFallback()
+    {
+        // key4 is not in BarBundle_ko_KR but in FooBundle
+        return service.getString(BAR_BUNDLE, KO_KR, "key4");
+    }
+
+    @Benchmark
+    public Object getStringMiss()
+    {
+        try
+        {
+            return service.getString(BAR_BUNDLE, EN_US, "NoSuchKey");
+        }
+        catch (MissingResourceException e)
+        {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Optional<String> tryGetStringMiss()
+    {
+        return service.tryGetString(BAR_BUNDLE, EN_US, "NoSuchKey");
+    }
+
+    @Benchmark
+    public String format0()
+    {
+        return service.format(BAR_BUNDLE, EN_US, "format1", (Object[]) null);
+    }
+
+    @Benchmark
+    public String format1()
+    {
+        return service.format(BAR_BUNDLE, EN_US, "format1", args[0]);
+    }
+
+    @Benchmark
+    public String format2()
+    {
+        return service.format(BAR_BUNDLE, EN_US, "format1", args[0], args[1]);
+    }
+
+    @Benchmark
+    public String formatN()
+    {
+        return service.format(BAR_BUNDLE, EN_US, "format1", args);
+    }
+
+    @Benchmark
+    public StringBuilder formatToBuilder()
+    {
+        buffer.setLength(0);
+        return service.formatTo(buffer, BAR_BUNDLE, EN_US, "format1", arguments.clear().add(1).add(2));
+    }
+
+    @Benchmark
+    public Map<String, String> getStrings4()
+    {
+        return service.getStrings(BAR_BUNDLE, KO_KR, keys);
+    }
+
+    @Benchmark
+    public String handleGetFallback()
+    {
+        return fallbackHandle.get(KO_KR);
+    }
+
+    @Benchmark
+    public String handleFormat0()
+    {
+        return formatHandle.format(EN_US);
+    }
+
+    @Benchmark
+    public ResourceBundle getBundle()
+    {
+        return service.getBundle(BAR_BUNDLE, KO_KR);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ResourceBundle getBundleContended()
+    {
+        return service.getBundle(BAR_BUNDLE, KO_KR);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String getStringContended()
+    {
+        return service.getString(BAR_BUNDLE, KO_KR, "key4");
+    }
+}
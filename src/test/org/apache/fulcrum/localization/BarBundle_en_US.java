@@ -31,7 +31,9 @@ public class BarBundle_en_US extends ListResourceBundle
         { "key1", "value1" },
         { "key2", "value2" },
         { "key3", "value3" },
-        { "key4", "value4" }
+        { "key4", "value4" },
+        { "format1", "Record {0} of {1}" },
+        { "plural1", "{0,plural,=0{No records}one{One record}other{# records}}" }
     };
 
     protected Object[][] getContents()
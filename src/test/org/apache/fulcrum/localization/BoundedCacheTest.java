@@ -0,0 +1,114 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the {@link BoundedCache}.
+ *
+ * @version $Id$
+ */
+public class BoundedCacheTest
+{
+    @Test
+    public void testLeastRecentlyUsedEviction()
+    {
+        BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>(8);
+        for (int i = 0; i < 8; i++)
+        {
+            cache.put(i, "v" + i);
+        }
+        // Use the oldest entries again, so the ones in between are evicted.
+        assertEquals("v0", cache.get(0));
+        assertEquals("v1", cache.get(1, k -> "reloaded"));
+        cache.put(100, "v100");
+        cache.put(101, "v101");
+
+        assertTrue(cache.size() <= 8);
+        assertNotNull(cache.get(0));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(101));
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    public void testConcurrentLoads() throws Exception
+    {
+        BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>(8);
+        CyclicBarrier bothLoading = new CyclicBarrier(2);
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++)
+            {
+                int key = i % 2;
+                results.add(executor.submit(() -> cache.computeIfAbsent(key, k ->
+                {
+                    loads.incrementAndGet();
+                    try
+                    {
+                        // Only returns if both keys are loaded at the same time.
+                        bothLoading.await(10, TimeUnit.SECONDS);
+                    }
+                    catch (Exception e)
+                    {
+                        throw new IllegalStateException(e);
+                    }
+                    return "v" + k;
+                })));
+            }
+            for (int i = 0; i < 4; i++)
+            {
+                assertEquals("v" + (i % 2), results.get(i).get(20, TimeUnit.SECONDS));
+            }
+            assertEquals(2, loads.get());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>(0);
+        assertEquals("v1", cache.computeIfAbsent(1, k -> "v1"));
+        assertEquals("v1", cache.get(1, k -> "v1"));
+        assertEquals(0, cache.size());
+    }
+}
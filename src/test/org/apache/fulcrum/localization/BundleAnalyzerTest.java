@@ -0,0 +1,131 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.TreeSet;
+
+import org.apache.fulcrum.localization.BundleAnalyzer.LocaleReport;
+import org.apache.fulcrum.localization.BundleAnalyzer.Report;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the {@link org.apache.fulcrum.localization.BundleAnalyzer}.
+ *
+ * @version $Id$
+ */
+public class BundleAnalyzerTest
+{
+    private static final Locale KO_KR = new Locale("ko", "KR");
+
+    @Test
+    public void testClassBundles() throws Exception
+    {
+        BundleAnalyzer analyzer = new BundleAnalyzer(getClass().getClassLoader());
+        List<Report> reports = analyzer.analyze(new String[] {
+            "org.apache.fulcrum.localization.BarBundle", "org.apache.fulcrum.localization.FooBundle" },
+            Locale.US, Arrays.asList(KO_KR, Locale.FRENCH));
+
+        LocaleReport ko = reports.get(0).getLocales().get(0);
+        assertEquals(KO_KR, ko.getLocale());
+        assertEquals(new TreeSet<String>(Arrays.asList("format1", "key4", "plural1")), ko.getMissing());
+        assertFalse(reports.get(0).getLocales().get(1).isAvailable());
+        assertFalse(reports.get(0).isComplete());
+        assertTrue(reports.get(1).getLocales().get(1).getMissing().isEmpty());
+        assertTrue(reports.get(1).getLocales().get(1).getIdentical().isEmpty());
+        assertTrue(reports.get(1).getLocales().get(1).isComplete());
+
+        assertThrows(MissingResourceException.class,
+            () -> analyzer.analyze("org.apache.fulcrum.localization.NoSuchBundle", Locale.US,
+                Collections.singleton(KO_KR)));
+    }
+
+    @Test
+    public void testPropertiesBundles(@TempDir Path directory) throws Exception
+    {
+        write(directory, "Messages.properties", "title=Records", "ok=OK", "count=Record {0} of {1}",
+            "quoted=Don''t delete {0}", "removed=Gone");
+        write(directory, "Messages_de.properties", "title=Datens\u00e4tze", "ok=OK",
+            "count=Datensatz {0} von {2}", "quoted=Nicht l\u00f6schen: {0}", "removed=Weg", "obsolete=Alt");
+        write(directory, "Messages_de_CH.properties", "title=Datens\u00e4tze");
+        write(directory, "Messages_fr.properties", "title=Enregistrements");
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { directory.toUri().toURL() }, null))
+        {
+            Report report = new BundleAnalyzer(loader).analyze("Messages", Locale.ROOT,
+                Arrays.asList(Locale.GERMAN, new Locale("de", "CH"), Locale.FRENCH));
+
+            LocaleReport de = report.getLocales().get(0);
+            assertTrue(de.getMissing().isEmpty());
+            assertEquals(Collections.singleton("obsolete"), de.getExtra());
+            assertEquals(Collections.singleton("ok"), de.getIdentical());
+            assertEquals(Collections.singleton("count"), de.getPlaceholderMismatches());
+            assertFalse(de.isComplete());
+
+            // de_CH takes the texts it does not define from de
+            LocaleReport deCh = report.getLocales().get(1);
+            assertTrue(deCh.getMissing().isEmpty());
+            assertEquals(Collections.singleton("ok"), deCh.getIdentical());
+
+            LocaleReport fr = report.getLocales().get(2);
+            assertEquals(new TreeSet<String>(Arrays.asList("count", "ok", "quoted", "removed")), fr.getMissing());
+            assertTrue(fr.getExtra().isEmpty());
+        }
+    }
+
+    @Test
+    public void testGetArguments()
+    {
+        assertEquals(new TreeSet<String>(Arrays.asList("0", "1")),
+            BundleAnalyzer.getArguments("{1,number} of {0}"));
+        assertEquals(Collections.singleton("0"), BundleAnalyzer.getArguments("'{1}' {0} ''quoted''"));
+        assertEquals(new TreeSet<String>(Arrays.asList("0", "count")),
+            BundleAnalyzer.getArguments("{count,plural,one{# file in {0}}other{# files}}"));
+        assertTrue(BundleAnalyzer.getArguments("{ not an argument }").isEmpty());
+    }
+
+    /**
+     * Writes a properties file.
+     *
+     * @param directory the directory
+     * @param name the name of the file
+     * @param lines the lines of the file
+     * @throws Exception if the file cannot be written
+     */
+    private static void write(Path directory, String name, String... lines) throws Exception
+    {
+        Files.write(directory.resolve(name), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+}
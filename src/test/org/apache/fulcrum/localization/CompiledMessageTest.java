@@ -0,0 +1,175 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the {@link CompiledMessage} formats like
+ * <code>MessageFormat</code>.
+ *
+ * @version $Id$
+ */
+public class CompiledMessageTest
+{
+    private static final String[] PATTERNS = {
+        "Record {0} of {1}",
+        "{1}{0}{1}",
+        "No placeholders",
+        "It''s '{0}' and {0}",
+        "Total: {0,number,#.##} for {1}",
+        "{0,choice,0#none|1#one|1<{0} items}",
+        "{2} only",
+        "{0,number,integer} {0,number,percent} {0,number,currency}",
+        "{0,number,#,##0.00} {0,number,0000}",
+        "{1,date} {1,time} {0}",
+        "{1,date,short}|{1,date,long}|{1,time,full}",
+        "{1,date,yyyy-MM-dd HH:mm} '{1}'"
+    };
+
+    private static final Locale[] LOCALES = {
+        Locale.US, Locale.GERMANY, Locale.FRANCE, new Locale("hi", "IN"),
+        new Locale("ar", "EG"), new Locale("de", "CH"), new Locale("th", "TH"),
+        Locale.TRADITIONAL_CHINESE, new Locale("ja", "JP", "JP")
+    };
+
+    @Test
+    public void testObjectArguments()
+    {
+        Object[] args = { 1234567, new BigDecimal("-0.5"), null };
+        Object[] integers = { Long.MIN_VALUE, (short) -1000, (byte) 7 };
+        Object[] others = { "text", new Date(0), Locale.GERMANY };
+        Object[] dates = { -3.5, new Date(1700000000000L), "text" };
+        Object[] julian = { 0, new Date(-20000000000000L), null };
+        for (Locale locale : LOCALES)
+        {
+            for (String pattern : PATTERNS)
+            {
+                CompiledMessage message = new CompiledMessage(pattern, new LocaleFormats(locale));
+                for (Object[] arguments : new Object[][] { args, integers, others, dates, julian, {} })
+                {
+                    MessageFormat format = new MessageFormat(pattern, locale);
+                    assertEquals(outcome(() -> format.format(arguments)),
+                        outcome(() -> message.format(arguments)), pattern);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param call A call formatting a message.
+     * @return The message, or the class of the exception thrown.
+     */
+    private static Object outcome(Supplier<String> call)
+    {
+        try
+        {
+            return call.get();
+        }
+        catch (RuntimeException e)
+        {
+            return e.getClass();
+        }
+    }
+
+    @Test
+    public void testPrimitiveArguments() throws Exception
+    {
+        MessageArguments args = new MessageArguments();
+        long[] numbers = { 0, 7, -999, 1000, -1234567, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (Locale locale : LOCALES)
+        {
+            for (String pattern : PATTERNS)
+            {
+                CompiledMessage message = new CompiledMessage(pattern, new LocaleFormats(locale));
+                for (long number : numbers)
+                {
+                    args.clear().add(number).add(2.5).add("x");
+                    StringBuilder out = new StringBuilder("> ");
+                    message.formatTo(out, args);
+                    assertEquals("> " + new MessageFormat(pattern, locale).format(args.toArray()),
+                        out.toString(), pattern);
+                }
+            }
+        }
+        assertEquals(0, args.clear().size());
+    }
+
+    @Test
+    public void testTimeArguments()
+    {
+        String[] patterns = { "Due {0,date,short} at {0,time,long}", "{0,date,long}",
+            "{0,date,yyyy-MM-dd k:K:h:mm:ss.SSS a z}" };
+        TimeZone zone = TimeZone.getDefault();
+        Random random = new Random(42);
+        try
+        {
+            // zones with local mean time before their first transition
+            for (String id : new String[] { "America/New_York", "Europe/Berlin", "Asia/Kolkata",
+                "Asia/Kathmandu", "Africa/Monrovia", "America/Sao_Paulo", "Pacific/Apia", "UTC" })
+            {
+                TimeZone.setDefault(TimeZone.getTimeZone(id));
+                for (Locale locale : LOCALES)
+                {
+                    LocaleFormats formats = new LocaleFormats(locale);
+                    for (String pattern : patterns)
+                    {
+                        CompiledMessage message = new CompiledMessage(pattern, formats);
+                        MessageFormat expected = new MessageFormat(pattern, locale);
+                        for (int i = 0; i < 200; i++)
+                        {
+                            Date date = new Date(random.nextLong() % 5000000000000L);
+                            assertEquals(expected.format(new Object[] { date }),
+                                message.format(new Object[] { date }), id + " " + pattern + " " + date.getTime());
+                        }
+                    }
+                }
+            }
+        }
+        finally
+        {
+            TimeZone.setDefault(zone);
+        }
+
+        // java.time values are rejected like MessageFormat does
+        LocaleFormats formats = new LocaleFormats(Locale.US);
+        CompiledMessage message = new CompiledMessage("Due {0,date,long}", formats);
+        assertThrows(IllegalArgumentException.class,
+            () -> message.format(new Object[] { LocalDate.of(2024, 3, 1) }));
+
+        // shared by messages using the same sub-format
+        assertSame(formats.getFormat(new SimpleDateFormat("yyyy", Locale.US)),
+            formats.getFormat(new SimpleDateFormat("yyyy", Locale.US)));
+    }
+}
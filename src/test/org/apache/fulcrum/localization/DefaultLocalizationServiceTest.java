@@ -0,0 +1,174 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.avalon.framework.logger.ConsoleLogger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Tests the request based lookups of the
+ * {@link org.apache.fulcrum.localization.DefaultLocalizationService}.
+ *
+ * @version $Id$
+ */
+public class DefaultLocalizationServiceTest
+{
+    private static final String BAR_BUNDLE = "org.apache.fulcrum.localization.BarBundle";
+
+    private static final Locale KO_KR = new Locale("ko", "KR");
+
+    private DefaultConfiguration conf = null;
+
+    /** The number of times the "Accept-Language" header was read. */
+    private final AtomicInteger headerReads = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp()
+    {
+        conf = new DefaultConfiguration("localization");
+        conf.setAttribute("locale-default-language", "en");
+        conf.setAttribute("locale-default-country", "US");
+        DefaultConfiguration bundles = new DefaultConfiguration("bundles");
+        for (String name : new String[] {
+            BAR_BUNDLE, "org.apache.fulcrum.localization.FooBundle" })
+        {
+            DefaultConfiguration bundle = new DefaultConfiguration("bundle");
+            bundle.setValue(name);
+            bundles.addChild(bundle);
+        }
+        conf.addChild(bundles);
+    }
+
+    /**
+     * Creates, configures and initializes a service.
+     *
+     * @return the service
+     * @throws Exception if the service cannot be set up
+     */
+    private DefaultLocalizationService createService() throws Exception
+    {
+        DefaultLocalizationService service = new DefaultLocalizationService();
+        service.enableLogging(new ConsoleLogger(ConsoleLogger.LEVEL_WARN));
+        service.configure(conf);
+        service.initialize();
+        return service;
+    }
+
+    /**
+     * Creates a request stub with attributes, counting the reads of the
+     * "Accept-Language" header.
+     *
+     * @param header the "Accept-Language" header
+     * @param session the session attributes, or <code>null</code> for
+     * no session
+     * @param cookies the cookies
+     * @return the request
+     */
+    private HttpServletRequest createRequest(String header, Map<String, Object> session, Cookie... cookies)
+    {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        HttpSession httpSession = (session == null ? null : (HttpSession) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] { HttpSession.class },
+            (proxy, method, args) -> "getAttribute".equals(method.getName()) ? session.get(args[0]) : null));
+        return (HttpServletRequest) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+            (proxy, method, args) ->
+            {
+                switch (method.getName())
+                {
+                    case "getHeader":
+                        headerReads.incrementAndGet();
+                        return header;
+                    case "getAttribute":
+                        return attributes.get(args[0]);
+                    case "setAttribute":
+                        attributes.put((String) args[0], args[1]);
+                        return null;
+                    case "getSession":
+                        return httpSession;
+                    case "getCookies":
+                        return cookies;
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    @Test
+    public void testRequestAttribute() throws Exception
+    {
+        DefaultLocalizationService service = createService();
+        HttpServletRequest req = createRequest("ko-KR, en;q=0.5", null);
+
+        assertEquals(KO_KR, service.getLocale(req));
+        ResourceBundle rb = service.getBundle(BAR_BUNDLE, req);
+        assertEquals(KO_KR, rb.getLocale());
+        assertEquals(KO_KR, service.getLocale(req));
+        assertSame(rb, service.getBundle(BAR_BUNDLE, req));
+        assertEquals(1, headerReads.get());
+
+        // the application switches the locale for the rest of the request
+        req.setAttribute("org.apache.fulcrum.localization.RequestLocale", Locale.US);
+        assertEquals(Locale.US, service.getLocale(req));
+        assertEquals(Locale.US, service.getBundle(BAR_BUNDLE, req).getLocale());
+
+        conf.setAttribute("request-attribute", "");
+        service = createService();
+        req = createRequest("ko-KR", null);
+        headerReads.set(0);
+        service.getLocale(req);
+        service.getLocale(req);
+        assertEquals(2, headerReads.get());
+    }
+
+    @Test
+    public void testOverrides() throws Exception
+    {
+        conf.setAttribute("locale-session-attribute", "locale");
+        conf.setAttribute("locale-cookie", "lang");
+        DefaultLocalizationService service = createService();
+        Map<String, Object> session = new HashMap<String, Object>();
+
+        assertEquals(KO_KR, service.getLocale(createRequest("ko-KR", session)));
+        assertEquals(Locale.FRENCH, service.getLocale(
+            createRequest("ko-KR", session, new Cookie("lang", "fr"))));
+        session.put("locale", Locale.US);
+        assertEquals(Locale.US, service.getLocale(
+            createRequest("ko-KR", session, new Cookie("lang", "fr"))));
+        session.put("locale", "ko_KR");
+        assertEquals(KO_KR, service.getBundle(BAR_BUNDLE, createRequest("en-US", session)).getLocale());
+    }
+}
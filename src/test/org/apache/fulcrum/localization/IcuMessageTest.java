@@ -0,0 +1,136 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the {@link IcuMessage} and the {@link PluralRules}.
+ *
+ * @version $Id$
+ */
+public class IcuMessageTest
+{
+    private static String format(Locale locale, String pattern, Object... args)
+    {
+        return new IcuMessage(pattern, new LocaleFormats(locale)).format(args);
+    }
+
+    @Test
+    public void testPlural()
+    {
+        String files = "{0,plural,=0{No files}one{# file}other{# files}}";
+        assertEquals("No files", format(Locale.US, files, 0));
+        assertEquals("1 file", format(Locale.US, files, 1));
+        assertEquals("1,000 files", format(Locale.US, files, 1000));
+        assertEquals("1.5 files", format(Locale.US, files, 1.5));
+
+        String russian = "{0,plural,one{# файл}few{# файла}many{# файлов}other{# файла}}";
+        Locale ru = new Locale("ru");
+        assertEquals("1 файл", format(ru, russian, 1));
+        assertEquals("3 файла", format(ru, russian, 3));
+        assertEquals("11 файлов", format(ru, russian, 11));
+        assertEquals("21 файл", format(ru, russian, 21));
+        assertEquals("1,5 файла", format(ru, russian, 1.5));
+
+        String guests = "{0,plural,offset:1 =0{nobody}=1{{1}}one{{1} and one other}other{{1} and # others}}";
+        assertEquals("nobody", format(Locale.US, guests, 0, "Ann"));
+        assertEquals("Ann", format(Locale.US, guests, 1, "Ann"));
+        assertEquals("Ann and one other", format(Locale.US, guests, 2, "Ann"));
+        assertEquals("Ann and 4 others", format(Locale.US, guests, 5, "Ann"));
+        String invited = "{0,plural,offset:1 =2{you and # other}other{you and # others}}";
+        assertEquals("you and 1 other", format(Locale.US, invited, 2));
+        assertEquals("you and 2 others", format(Locale.US, invited, 3));
+
+        String place = "{0,selectordinal,one{#st}two{#nd}few{#rd}other{#th}}";
+        StringBuilder places = new StringBuilder();
+        for (int n : new int[] { 1, 2, 3, 4, 11, 12, 21, 103 })
+        {
+            places.append(format(Locale.US, place, n)).append(' ');
+        }
+        assertEquals("1st 2nd 3rd 4th 11th 12th 21st 103rd ", places.toString());
+    }
+
+    @Test
+    public void testPluralRules()
+    {
+        PluralRules arabic = PluralRules.forLocale(new Locale("ar"), false);
+        assertEquals("zero one two few many other",
+            String.join(" ", arabic.select(0), arabic.select(1), arabic.select(2),
+                arabic.select(105), arabic.select(111), arabic.select(100)));
+
+        PluralRules polish = PluralRules.forLocale(new Locale("pl"), false);
+        assertEquals("one few many many other",
+            String.join(" ", polish.select(1), polish.select(22), polish.select(12),
+                polish.select(25), polish.select(1.5)));
+
+        PluralRules czech = PluralRules.forLocale(new Locale("cs"), false);
+        assertEquals("many", czech.select(new BigDecimal("1.0")));
+        assertEquals("one", czech.select(1.0));
+
+        PluralRules french = PluralRules.forLocale(Locale.FRENCH, false);
+        assertEquals("one one other many", String.join(" ", french.select(0), french.select(1.5),
+            french.select(2), french.select(1000000)));
+        assertEquals("other", PluralRules.forLocale(new Locale("pt", "PT"), false).select(0));
+        assertEquals("one", PluralRules.forLocale(new Locale("pt", "BR"), false).select(0));
+
+        PluralRules english = PluralRules.forLocale(Locale.ENGLISH, false);
+        assertEquals("one", english.select(1));
+        assertEquals("other", english.select(new BigDecimal("1.00")));
+        assertEquals("other", PluralRules.forLocale(Locale.JAPANESE, false).select(1));
+    }
+
+    @Test
+    public void testSelectAndQuoting()
+    {
+        String invite = "{0,select,female{She}male{He}other{They}} invited {1,plural,one{a friend}other{# friends}}"
+            + " to {0,select,female{her}male{his}other{their}} party";
+        assertEquals("She invited 3 friends to her party", format(Locale.US, invite, "female", 3));
+        assertEquals("They invited a friend to their party", format(Locale.US, invite, null, 1));
+
+        assertEquals("It's {0} and it''s 7",
+            format(Locale.US, "It's '{0}' and it''''s {0}", 7));
+        assertEquals("#1 of 2", format(Locale.US, "{0,plural,other{'#'# of {1}}}", 1, 2));
+        assertEquals("Due 3/1/24, 12.50%", format(Locale.US,
+            "Due {0,date,M/d/yy}, {1,number,#0.00%}",
+            new GregorianCalendar(2024, 2, 1).getTime(), 0.125));
+        assertEquals("{1} missing", format(Locale.US, "{1} missing", 0));
+    }
+
+    @Test
+    public void testInvalidPatterns()
+    {
+        for (String pattern : new String[] {
+            "{0,plural,one{# file}}", "{0,plural,other{#}", "{0", "}", "{name}",
+            "{0,spellout}", "{0,select,a{x}a{y}other{z}}", "{0,number,::percent}" })
+        {
+            assertThrows(IllegalArgumentException.class, () -> format(Locale.US, pattern, 1), pattern);
+        }
+        assertThrows(IllegalArgumentException.class,
+            () -> format(Locale.US, "{0,plural,other{#}}", "text"));
+    }
+}
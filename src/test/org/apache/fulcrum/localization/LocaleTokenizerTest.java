@@ -20,6 +20,9 @@ package org.apache.fulcrum.localization;
  */
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.util.Locale;
@@ -69,4 +72,30 @@ public class LocaleTokenizerTest extends BaseUnit5Test
             fail();
         }
     }
+
+    @Test
+    public void testQualityAndCanonicalLocales()
+    {
+        LocaleTokenizer tok = new LocaleTokenizer(" de-AT;q=0.5 ,, fr ; q = 0.9, EN-us, x;q=bad");
+        assertEquals(new Locale("en", "US"), tok.next());
+        assertEquals(new Locale("x", ""), tok.next());
+        assertEquals(new Locale("fr", ""), tok.next());
+        Locale locale = (Locale) tok.next();
+        assertEquals(new Locale("de", "AT"), locale);
+        assertFalse(tok.hasNext());
+
+        tok = new LocaleTokenizer("de-at");
+        assertSame(locale, tok.next());
+    }
+
+    @Test
+    public void testLanguageTags()
+    {
+        LocaleTokenizer tok = new LocaleTokenizer("zh-Hant-TW, i-default;q=0.5");
+        Locale locale = (Locale) tok.next();
+        assertEquals("zh", locale.getLanguage());
+        assertEquals("Hant", locale.getScript());
+        assertEquals("TW", locale.getCountry());
+        assertTrue(tok.hasNext());
+    }
 }
@@ -20,10 +20,29 @@ package org.apache.fulcrum.localization;
  */
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.fulcrum.testcontainer.BaseUnit5Test;
 import org.junit.jupiter.api.BeforeEach;
@@ -116,6 +135,234 @@ public class LocalizationTest extends BaseUnit5Test
 
     }
     
+    /**
+     * Bundles resolved through a fallback must be served from the
+     * cache for the requested locale, as must unresolvable bundles.
+     */
+    @Test
+    public void testFallbackCaching()
+    {
+        List<String> loads = new ArrayList<String>();
+        LocalizationListener listener = new LocalizationListener()
+        {
+            @Override
+            public void bundleLoaded(String bundleName, Locale locale, long nanos, boolean found)
+            {
+                loads.add(bundleName + "/" + locale);
+            }
+        };
+        SimpleLocalizationServiceImpl service = (SimpleLocalizationServiceImpl) localizationService;
+        service.addLocalizationListener(listener);
+        try
+        {
+            Locale austria = new Locale("de", "AT");
+            String bundleName = "org.apache.fulcrum.localization.FooBundle";
+            ResourceBundle rb = localizationService.getBundle(bundleName, austria);
+            assertEquals(Arrays.asList(bundleName + "/de_AT"), loads);
+            assertSame(rb, localizationService.getBundle(bundleName, austria));
+            assertEquals(1, loads.size());
+
+            assertThrows(MissingResourceException.class,
+                () -> localizationService.getBundle("DoesNotExist", austria));
+            assertEquals(2, loads.size());
+            assertThrows(MissingResourceException.class,
+                () -> localizationService.getBundle("DoesNotExist", austria));
+            assertEquals(2, loads.size());
+        }
+        finally
+        {
+            service.removeLocalizationListener(listener);
+        }
+    }
+    
+    @Test
+    public void testTryGetString()
+    {
+        assertEquals("value4",
+            localizationService.tryGetString(null, new Locale("ko", "KR"), "key4").get());
+        assertEquals("[ko] value3",
+            localizationService.tryGetString("org.apache.fulcrum.localization.BarBundle",
+                new Locale("ko", "KR"), "key3").get());
+        assertFalse(localizationService.tryGetString(null, null, "NoSuchKey").isPresent());
+        assertFalse(localizationService.tryGetString("DoesNotExist", null, "key1").isPresent());
+    }
+
+    @Test
+    public void testNegotiateLocale()
+    {
+        String bundleName = "org.apache.fulcrum.localization.BarBundle";
+        assertEquals(new Locale("ko", "KR"),
+            localizationService.negotiateLocale("fr-CH, ko-KR;q=0.9", bundleName));
+        assertEquals(new Locale("ko", "KR"),
+            localizationService.negotiateLocale("ko-Kore-KR, en;q=0.5", bundleName));
+        assertEquals(localizationService.getDefaultLocale(),
+            localizationService.negotiateLocale("fr-CH", bundleName));
+        assertEquals(localizationService.getDefaultLocale(),
+            localizationService.negotiateLocale(null, bundleName));
+    }
+
+    @Test
+    public void testFormat()
+    {
+        Locale locale = new Locale("en", "US");
+        for (int i = 0; i < 2; i++)
+        {
+            assertEquals("Record 1 of 2",
+                localizationService.format(null, locale, "format1", 1, 2));
+            assertEquals("Record 3 of {1}",
+                localizationService.format(null, locale, "format1", 3));
+            assertEquals("Record {0} of {1}",
+                localizationService.format(null, locale, "format1", null));
+            assertEquals("Record 1,000 of 2",
+                localizationService.format(null, locale, "format1", 1000L, 2L));
+            assertEquals("Record 2.5 of {1}",
+                localizationService.format(null, locale, "format1", 2.5));
+            assertEquals("Record x of {1}",
+                localizationService.format(null, locale, "format1", 'x'));
+            assertEquals("> Record 4 of {1}", localizationService.formatTo(new StringBuilder("> "),
+                null, locale, "format1", new MessageArguments().add(4)).toString());
+        }
+    }
+    
+    @Test
+    public void testGetStrings()
+    {
+        Locale locale = new Locale("ko", "KR");
+        Map<String, String> values = localizationService.getStrings(null, locale,
+            Arrays.asList("key4", "key1", "NoSuchKey"));
+        assertEquals(Arrays.asList("key4", "key1"), new ArrayList<String>(values.keySet()));
+        assertEquals("value4", values.get("key4"));
+        assertEquals("[ko] value1", values.get("key1"));
+
+        Map<String, String> prefixed = localizationService.getStringsWithPrefix(null, locale, "key");
+        assertEquals(Arrays.asList("key1", "key2", "key3", "key4"),
+            new ArrayList<String>(prefixed.keySet()));
+        for (Map.Entry<String, String> entry : prefixed.entrySet())
+        {
+            assertEquals(localizationService.getString(null, locale, entry.getKey()), entry.getValue());
+        }
+        assertTrue(localizationService.getStringsWithPrefix(null, locale, "NoSuch").isEmpty());
+        assertThrows(MissingResourceException.class,
+            () -> localizationService.getStrings("DoesNotExist", locale, Arrays.asList("key1")));
+    }
+
+    @Test
+    public void testMessageCatalog() throws Exception
+    {
+        Locale locale = new Locale("ko", "KR");
+        MessageCatalog catalog = localizationService.getMessageCatalog(null, locale);
+        assertSame(catalog, localizationService.getMessageCatalog(null, locale));
+        assertEquals(4, catalog.size());
+        assertEquals("{\"key1\":\"[ko] value1\",\"key2\":\"[ko] value2\","
+            + "\"key3\":\"[ko] value3\",\"key4\":\"value4\"}",
+            StandardCharsets.UTF_8.decode(catalog.asByteBuffer(MessageCatalog.Format.JSON)).toString());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        catalog.writeTo(MessageCatalog.Format.BINARY, out);
+        assertEquals(catalog.getLength(MessageCatalog.Format.BINARY), out.size());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(MessageCatalog.BINARY_MAGIC, in.readInt());
+        assertEquals(4, in.readInt());
+        byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        assertEquals("key1", new String(key, StandardCharsets.UTF_8));
+
+        assertTrue(catalog.getETag(MessageCatalog.Format.JSON).matches("\"[0-9a-f]{64}\""));
+        assertFalse(catalog.getETag(MessageCatalog.Format.JSON)
+            .equals(catalog.getETag(MessageCatalog.Format.BINARY)));
+
+        TreeMap<String, String> texts = new TreeMap<String, String>();
+        texts.put("quote", "\"\\\n\u0001\u2028\u00e4");
+        assertEquals("{\"quote\":\"\\\"\\\\\\n\\u0001\\u2028\u00e4\"}",
+            StandardCharsets.UTF_8.decode(new MessageCatalog("test", locale, texts)
+                .asByteBuffer(MessageCatalog.Format.JSON)).toString());
+    }
+
+    @Test
+    public void testMessageHandle()
+    {
+        Locale locale = new Locale("ko", "KR");
+        MessageHandle handle = localizationService.getMessageHandle(null, "key4");
+        for (int i = 0; i < 2; i++)
+        {
+            assertEquals("value4", handle.get(locale));
+            assertEquals(localizationService.getString(null, null, "key4"), handle.get(null));
+        }
+        assertEquals("Record 1 of 2",
+            localizationService.getMessageHandle(null, "format1").format(Locale.US, 1, 2));
+
+        MessageHandle missing = localizationService.getMessageHandle(null, "NoSuchKey");
+        assertFalse(missing.tryGet(locale).isPresent());
+        assertThrows(MissingResourceException.class, () -> missing.get(locale));
+        assertThrows(MissingResourceException.class, () -> missing.format(locale, 1));
+
+        // other implementations of the service are called through
+        SimpleLocalizationService other = (SimpleLocalizationService) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] { SimpleLocalizationService.class },
+            (proxy, method, args) -> method.invoke(localizationService, args));
+        MessageHandle delegating = new MessageHandle(other, null, "format1");
+        assertEquals("Record 1 of 2", delegating.format(Locale.US, 1, 2));
+        assertEquals("> Record 3 of {1}", delegating.formatTo(new StringBuilder("> "), Locale.US,
+            new MessageArguments().add(3)).toString());
+        assertFalse(new MessageHandle(other, null, "NoSuchKey").tryGet(locale).isPresent());
+    }
+
+    /**
+     * Tests that the default methods of the interface, which
+     * implementations written against older versions inherit, behave
+     * like the service.
+     *
+     * @throws Exception generic exception
+     */
+    @Test
+    public void testDefaultMethods() throws Exception
+    {
+        SimpleLocalizationService older = (SimpleLocalizationService) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] { SimpleLocalizationService.class },
+            (proxy, method, args) ->
+            {
+                if (method.isDefault())
+                {
+                    return InvocationHandler.invokeDefault(proxy, method, args);
+                }
+                try
+                {
+                    return method.invoke(localizationService, args);
+                }
+                catch (InvocationTargetException e)
+                {
+                    throw e.getCause();
+                }
+            });
+        Locale locale = new Locale("ko", "KR");
+
+        assertEquals("value4", older.tryGetString(null, locale, "key4").get());
+        assertFalse(older.tryGetString("DoesNotExist", locale, "key1").isPresent());
+        assertEquals(localizationService.getStrings(null, locale, Arrays.asList("key4", "key1", "NoSuchKey")),
+            older.getStrings(null, locale, Arrays.asList("key4", "key1", "NoSuchKey")));
+        assertThrows(MissingResourceException.class,
+            () -> older.getStrings("DoesNotExist", locale, Arrays.asList("key1")));
+        assertEquals(localizationService.getStringsWithPrefix(null, locale, "key"),
+            older.getStringsWithPrefix(null, locale, "key"));
+        assertEquals(localizationService.getMessageCatalog(null, locale).getETag(MessageCatalog.Format.JSON),
+            older.getMessageCatalog(null, locale).getETag(MessageCatalog.Format.JSON));
+        assertEquals("value4", older.getMessageHandle(null, "key4").get(locale));
+
+        assertSame(localizationService.getBundle(null, locale), older.getBundleAsync(null, locale).get());
+        assertEquals("value4", older.getStringAsync(null, locale, "key4").get());
+        assertEquals("Record 1 of 2",
+            older.formatAsync(null, Locale.US, "format1", new Object[] { 1, 2 }).get());
+        ExecutionException e = assertThrows(ExecutionException.class,
+            () -> older.getStringAsync(null, locale, "NoSuchKey").get());
+        assertTrue(e.getCause() instanceof MissingResourceException);
+
+        assertEquals("> Record 1,000 of 2", older.formatTo(new StringBuilder("> "), null, Locale.US,
+            "format1", new MessageArguments().add(1000L).add(2L)).toString());
+        StringWriter out = new StringWriter();
+        older.formatTo(out, null, Locale.US, "format1", new MessageArguments().add(2.5));
+        assertEquals("Record 2.5 of {1}", out.toString());
+    }
+
     /**
      * Putting this in a separate test case because it fails..  Why?  I don't know.  I have never
      * used localization, so I leave it to brains better then mine. -dep
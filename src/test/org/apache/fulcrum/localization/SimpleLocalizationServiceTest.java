@@ -0,0 +1,458 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.apache.avalon.framework.configuration.ConfigurationException;
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.apache.avalon.framework.logger.ConsoleLogger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the optional features of the
+ * {@link org.apache.fulcrum.localization.SimpleLocalizationServiceImpl}
+ * which are switched on by configuration.
+ *
+ * @version $Id$
+ */
+public class SimpleLocalizationServiceTest
+{
+    private DefaultConfiguration conf = null;
+
+    @BeforeEach
+    public void setUp()
+    {
+        conf = new DefaultConfiguration("localization");
+        conf.setAttribute("locale-default-language", "en");
+        conf.setAttribute("locale-default-country", "US");
+        DefaultConfiguration bundles = new DefaultConfiguration("bundles");
+        for (String name : new String[] {
+            "org.apache.fulcrum.localization.BarBundle",
+            "org.apache.fulcrum.localization.FooBundle",
+            "org.apache.fulcrum.localization.MissingBundle" })
+        {
+            DefaultConfiguration bundle = new DefaultConfiguration("bundle");
+            bundle.setValue(name);
+            bundles.addChild(bundle);
+        }
+        conf.addChild(bundles);
+    }
+
+    /**
+     * Creates, configures and initializes a service.
+     *
+     * @return the service
+     * @throws Exception if the service cannot be set up
+     */
+    private SimpleLocalizationServiceImpl createService() throws Exception
+    {
+        SimpleLocalizationServiceImpl service = new SimpleLocalizationServiceImpl();
+        service.enableLogging(new ConsoleLogger(ConsoleLogger.LEVEL_WARN));
+        service.configure(conf);
+        service.initialize();
+        return service;
+    }
+
+    @Test
+    public void testKeyIndex() throws Exception
+    {
+        conf.setAttribute("key-index", "true");
+        SimpleLocalizationService service = createService();
+
+        assertEquals("value1", service.getString(null, null, "key1"));
+        assertEquals("[ko] value3", service.getString(null, new Locale("ko", "KR"), "key3"));
+        assertEquals("value4", service.getString(null, new Locale("ko", "KR"), "key4"));
+        assertEquals("[fr] value4",
+            service.getString("org.apache.fulcrum.localization.FooBundle", Locale.FRENCH, "key4"));
+        assertFalse(service.tryGetString(null, null, "NoSuchKey").isPresent());
+        assertEquals("value4", service.getStrings(null, new Locale("ko", "KR"),
+            Collections.singleton("key4")).get("key4"));
+        assertEquals(4, service.getStringsWithPrefix(null, new Locale("ko", "KR"), "").size());
+        assertThrows(MissingResourceException.class,
+            () -> service.getString(null, null, "NoSuchKey"));
+        assertThrows(MissingResourceException.class,
+            () -> service.getString("DoesNotExist", null, "key1"));
+    }
+
+    @Test
+    public void testCompactBundles() throws Exception
+    {
+        conf.setAttribute("compact-bundles", "true");
+        SimpleLocalizationService service = createService();
+
+        ResourceBundle rb = service.getBundle(
+            "org.apache.fulcrum.localization.FooBundle", Locale.FRENCH);
+        assertTrue(rb instanceof CompactResourceBundle);
+        assertEquals(Locale.FRENCH, rb.getLocale());
+        assertEquals("[fr] value4", rb.getString("key4"));
+        assertTrue(rb.containsKey("key4"));
+        assertFalse(rb.containsKey("NoSuchKey"));
+        assertEquals(rb.keySet().size(), Collections.list(rb.getKeys()).size());
+        assertTrue(rb == service.getBundle(
+            "org.apache.fulcrum.localization.FooBundle", Locale.FRANCE));
+
+        // the locales share one key table, whichever is loaded first
+        ResourceBundle en = service.getBundle("org.apache.fulcrum.localization.FooBundle", Locale.ENGLISH);
+        ResourceBundle ko = service.getBundle("org.apache.fulcrum.localization.BarBundle", new Locale("ko", "KR"));
+        ResourceBundle us = service.getBundle("org.apache.fulcrum.localization.BarBundle", Locale.US);
+        assertSame(((CompactResourceBundle) rb).getKeyTable(), ((CompactResourceBundle) en).getKeyTable());
+        assertSame(((CompactResourceBundle) ko).getKeyTable(), ((CompactResourceBundle) us).getKeyTable());
+        assertEquals("[ko] value3", ko.getString("key3"));
+        assertFalse(ResourceBundle.getBundle("org.apache.fulcrum.localization.FooBundle", Locale.FRENCH)
+            instanceof CompactResourceBundle);
+
+        assertEquals("value1", service.getString(null, null, "key1"));
+        assertEquals("[ko] value3", service.getString(null, new Locale("ko", "KR"), "key3"));
+        assertEquals("value4", service.getString(null, new Locale("ko", "KR"), "key4"));
+        assertThrows(MissingResourceException.class,
+            () -> service.getString(null, null, "NoSuchKey"));
+    }
+
+    @Test
+    public void testCatalog(@TempDir Path directory) throws Exception
+    {
+        CatalogCompiler compiler = new CatalogCompiler(directory, getClass().getClassLoader());
+        List<Locale> locales = Arrays.asList(Locale.US, Locale.FRENCH, new Locale("ko", "KR"));
+        compiler.compile("org.apache.fulcrum.localization.BarBundle", locales);
+        compiler.compile("org.apache.fulcrum.localization.FooBundle", locales);
+        Path french = directory.resolve("org.apache.fulcrum.localization.FooBundle_fr.flc");
+        assertTrue(Files.isRegularFile(french));
+
+        // broken catalogs fail when they are opened
+        byte[] bytes = Files.readAllBytes(french);
+        assertThrows(IOException.class,
+            () -> new MappedResourceBundle(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1))));
+        ByteBuffer corrupt = ByteBuffer.wrap(bytes.clone());
+        corrupt.putInt(MappedResourceBundle.HEADER_SIZE + 8, bytes.length);
+        assertThrows(IOException.class, () -> new MappedResourceBundle(corrupt));
+
+        // loaded without the catalogs before, and by other callers after
+        ResourceBundle plain = ResourceBundle.getBundle(
+            "org.apache.fulcrum.localization.FooBundle", Locale.FRENCH);
+        conf.setAttribute("catalog-directory", directory.toString());
+        SimpleLocalizationService service = createService();
+        ResourceBundle rb = service.getBundle(
+            "org.apache.fulcrum.localization.FooBundle", Locale.FRENCH);
+        assertTrue(rb instanceof MappedResourceBundle);
+        assertSame(plain, ResourceBundle.getBundle(
+            "org.apache.fulcrum.localization.FooBundle", Locale.FRENCH));
+        assertEquals("[fr] value4", rb.getString("key4"));
+        assertFalse(rb.containsKey("NoSuchKey"));
+        assertEquals(4, rb.keySet().size());
+
+        assertEquals("value1", service.getString(null, null, "key1"));
+        assertEquals("[ko] value3", service.getString(null, new Locale("ko", "KR"), "key3"));
+        assertEquals("value4", service.getString(null, new Locale("ko", "KR"), "key4"));
+        assertEquals("Record 1 of 2", service.format(null, null, "format1", 1, 2));
+        assertThrows(MissingResourceException.class,
+            () -> service.getString(null, null, "NoSuchKey"));
+    }
+
+    @Test
+    public void testBundleSource() throws Exception
+    {
+        String url = "jdbc:h2:mem:localization;DB_CLOSE_DELAY=-1";
+        String bundleName = "org.apache.fulcrum.localization.DatabaseBundle";
+        try (Connection con = DriverManager.getConnection(url);
+             Statement stmt = con.createStatement())
+        {
+            stmt.execute("CREATE TABLE LOCALIZATION (BUNDLE_NAME VARCHAR(255), LOCALE VARCHAR(32),"
+                + " MESSAGE_KEY VARCHAR(255), MESSAGE_VALUE VARCHAR(4000), VERSION BIGINT)");
+            stmt.execute("INSERT INTO LOCALIZATION VALUES"
+                + " ('" + bundleName + "', '', 'key1', 'one', 1),"
+                + " ('" + bundleName + "', '', 'key2', 'two', 2),"
+                + " ('" + bundleName + "', 'de', 'key1', 'eins', 3),"
+                + " ('org.apache.fulcrum.localization.FooBundle', 'fr', 'key4', '[db] value4', 4)");
+
+            DefaultConfiguration source = new DefaultConfiguration("source");
+            source.setAttribute("class", JdbcBundleSource.class.getName());
+            DefaultConfiguration urlConf = new DefaultConfiguration("url");
+            urlConf.setValue(url);
+            source.addChild(urlConf);
+            conf.addChild(source);
+            // loaded without the source before, and by other callers after
+            ResourceBundle plain = ResourceBundle.getBundle(
+                "org.apache.fulcrum.localization.FooBundle", Locale.FRENCH);
+            SimpleLocalizationServiceImpl service = createService();
+
+            assertEquals("eins", service.getString(bundleName, Locale.GERMAN, "key1"));
+            assertEquals("two", service.getString(bundleName, Locale.GERMAN, "key2"));
+            assertEquals("[db] value4",
+                service.getString("org.apache.fulcrum.localization.FooBundle", Locale.FRENCH, "key4"));
+            assertEquals("[fr] value3",
+                service.getString("org.apache.fulcrum.localization.FooBundle", Locale.FRENCH, "key3"));
+            assertSame(plain, ResourceBundle.getBundle(
+                "org.apache.fulcrum.localization.FooBundle", Locale.FRENCH));
+            assertEquals("[fr] value4", plain.getString("key4"));
+
+            stmt.execute("UPDATE LOCALIZATION SET MESSAGE_VALUE = 'zwei', VERSION = 5"
+                + " WHERE LOCALE = '' AND MESSAGE_KEY = 'key2'");
+            stmt.execute("UPDATE LOCALIZATION SET MESSAGE_VALUE = NULL, VERSION = 6"
+                + " WHERE LOCALE = 'de' AND MESSAGE_KEY = 'key1'");
+            service.refreshBundleSource();
+
+            assertEquals("one", service.getString(bundleName, Locale.GERMAN, "key1"));
+            assertEquals("zwei", service.getString(bundleName, Locale.GERMAN, "key2"));
+            service.dispose();
+        }
+    }
+
+    @Test
+    public void testAsync() throws Exception
+    {
+        SimpleLocalizationServiceImpl service = createService();
+        AtomicInteger tasks = new AtomicInteger();
+        service.setAsyncExecutor(task ->
+        {
+            tasks.incrementAndGet();
+            task.run();
+        });
+
+        // a missing key is looked up in all bundles, loading them
+        Locale korean = new Locale("ko", "KR");
+        CompletableFuture<String> missing = service.getStringAsync(null, korean, "NoSuchKey");
+        ExecutionException e = assertThrows(ExecutionException.class, missing::get);
+        assertTrue(e.getCause() instanceof MissingResourceException);
+        assertEquals(1, tasks.get());
+
+        // the bundles are cached now, so no task is submitted
+        CompletableFuture<String> cached = service.getStringAsync(null, korean, "key4");
+        assertTrue(cached.isDone());
+        assertEquals("value4", cached.get());
+        assertEquals("[ko] value3", service.getStringAsync(null, korean, "key3").get());
+        assertTrue(service.getBundleAsync(null, korean).isDone());
+        assertTrue(service.getStringAsync(null, korean, "NoSuchKey").isCompletedExceptionally());
+        assertEquals(1, tasks.get());
+
+        assertEquals("Record 1 of 2", service.formatAsync(null, null, "format1", new Object[] { 1, 2 }).get());
+        assertEquals("Record 3 of 4", service.formatAsync(null, null, "format1", new Object[] { 3, 4 }).get());
+        assertEquals(2, tasks.get());
+        service.dispose();
+
+        // no executor is created after disposal
+        e = assertThrows(ExecutionException.class, service.getStringAsync(null, Locale.FRENCH, "key1")::get);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals(2, tasks.get());
+    }
+
+    @Test
+    public void testIcuSyntax() throws Exception
+    {
+        conf.setAttribute("message-syntax", "icu");
+        SimpleLocalizationServiceImpl service = createService();
+
+        assertEquals("No records", service.format(null, Locale.US, "plural1", 0));
+        assertEquals("One record", service.format(null, Locale.US, "plural1", 1));
+        assertEquals("1,234 records", service.formatTo(new StringBuilder(), null, Locale.US, "plural1",
+            new MessageArguments().add(1234)).toString());
+        assertEquals("Record 1 of 2", service.format(null, Locale.US, "format1", 1, 2));
+        assertEquals("2 records", service.getMessageHandle(null, "plural1").format(Locale.US, 2));
+        service.dispose();
+
+        conf.setAttribute("message-syntax", "gettext");
+        assertThrows(ConfigurationException.class, () -> createService());
+    }
+
+    @Test
+    public void testCacheLimits() throws Exception
+    {
+        conf.setAttribute("locale-cache-size", "10");
+        DefaultConfiguration metrics = new DefaultConfiguration("metrics");
+        metrics.setAttribute("jmx", "false");
+        conf.addChild(metrics);
+        SimpleLocalizationServiceImpl service = createService();
+
+        assertEquals(service.getDefaultLocale(), service.canonicalize(new Locale("xx", "YY")));
+        assertEquals(Locale.FRENCH, service.canonicalize(new Locale("fr", "YY", "Z")));
+        assertEquals(Locale.FRANCE, service.canonicalize(Locale.FRANCE));
+        assertEquals(Locale.US, service.canonicalize(Locale.forLanguageTag("en-US-x-random")));
+        assertEquals(Locale.US, service.canonicalize(Locale.forLanguageTag("en-US-u-nu-thai")));
+        assertEquals(Locale.US, service.canonicalize(Locale.forLanguageTag("en-Zzzz-US-abcdefgh")));
+        Locale chinese = Locale.forLanguageTag("zh-Hant-TW");
+        assertEquals(chinese, service.canonicalize(Locale.forLanguageTag("zh-Hant-TW-x-random")));
+        Locale japanese = new Locale("ja", "JP", "JP");
+        assertEquals(japanese, service.canonicalize(japanese));
+
+        // the parsed message is shared by locales resolving to the same bundles
+        AtomicInteger lookups = new AtomicInteger();
+        service.addLocalizationListener(new LocalizationListener()
+        {
+            @Override
+            public void lookupHit(String bundleName, Locale locale, String key, int fallbackDepth)
+            {
+                lookups.incrementAndGet();
+            }
+        });
+        assertEquals("Record 1 of 2",
+            service.format(null, Locale.forLanguageTag("en-US-x-first"), "format1", 1, 2));
+        assertEquals("Record 3 of 4",
+            service.format(null, Locale.forLanguageTag("en-US-x-second"), "format1", 3, 4));
+        assertEquals(1, lookups.get());
+
+        // extensions which change the formats are kept
+        Locale thai = Locale.forLanguageTag("th-TH-u-nu-thai-x-random");
+        assertEquals(Locale.forLanguageTag("th-TH-u-nu-thai"), service.getFormatLocale(thai));
+        assertEquals("Record \u0e51 of \u0e52", service.format(null, thai, "format1", 1, 2));
+        assertEquals("Record \u0e51 of \u0e52",
+            service.getMessageHandle(null, "format1").format(thai, 1, 2));
+        assertEquals("Record 1 of 2", service.format(null, new Locale("th", "TH"), "format1", 1, 2));
+        assertEquals(new Locale("ja", "JP", "JP"), service.getFormatLocale(new Locale("ja", "JP", "JP")));
+
+        for (String country : Locale.getISOCountries())
+        {
+            assertEquals("[fr] value4",
+                service.getString("org.apache.fulcrum.localization.FooBundle",
+                    new Locale("fr", country), "key4"));
+            assertEquals("value1",
+                service.getString(null, new Locale("q" + country.toLowerCase(Locale.ROOT)), "key1"));
+        }
+        assertTrue(service.getStatistics().getCachedBundles() <= 20);
+        assertEquals("[fr] value4",
+            service.getString("org.apache.fulcrum.localization.FooBundle", Locale.FRENCH, "key4"));
+        service.dispose();
+    }
+
+    @Test
+    public void testPreload() throws Exception
+    {
+        DefaultConfiguration preload = new DefaultConfiguration("preload");
+        for (String name : new String[] { "fr", "ko_KR" })
+        {
+            DefaultConfiguration locale = new DefaultConfiguration("locale");
+            locale.setValue(name);
+            preload.addChild(locale);
+        }
+        conf.addChild(preload);
+        conf.setAttribute("key-index", "true");
+        SimpleLocalizationService service = createService();
+        assertEquals("[ko] value1", service.getString(null, new Locale("ko", "KR"), "key1"));
+
+        // MissingBundle cannot be found
+        preload.setAttribute("fail-on-missing", "true");
+        assertThrows(ConfigurationException.class, () -> createService());
+    }
+
+    @Test
+    public void testReload() throws Exception
+    {
+        String bundleName = "org.apache.fulcrum.localization.ReloadBundle";
+        Path file = Paths.get(getClass().getResource("FooBundle_en.class").toURI())
+            .resolveSibling("ReloadBundle.properties");
+        Files.write(file, "key1=one\n".getBytes(StandardCharsets.ISO_8859_1));
+        try
+        {
+            SimpleLocalizationServiceImpl service = createService();
+            assertEquals("one", service.getString(bundleName, null, "key1"));
+            assertEquals("one", service.format(bundleName, null, "key1", null));
+            MessageHandle handle = service.getMessageHandle(bundleName, "key1");
+            assertEquals("one", handle.get(null));
+
+            // caching another locale is not a change of the files
+            service.checkBundles();
+            int generation = service.getGeneration();
+            assertEquals("one", service.getString(bundleName, Locale.FRENCH, "key1"));
+            service.checkBundles();
+            assertEquals(generation, service.getGeneration());
+
+            BundleChangeDetector detector = new BundleChangeDetector(getClass().getClassLoader());
+            List<Locale> locales = Collections.singletonList(Locale.US);
+            assertFalse(detector.hasChanged(bundleName, locales));
+            assertFalse(detector.hasChanged(bundleName, locales));
+
+            Files.write(file, "key1=two\n".getBytes(StandardCharsets.ISO_8859_1));
+            Files.setLastModifiedTime(file,
+                FileTime.fromMillis(System.currentTimeMillis() + 10000));
+            assertTrue(detector.hasChanged(bundleName, locales));
+            assertFalse(detector.hasChanged(bundleName, Arrays.asList(Locale.US, Locale.GERMAN)));
+
+            service.checkBundles();
+            assertEquals(generation + 1, service.getGeneration());
+            assertEquals("two", service.getString(bundleName, null, "key1"));
+            assertEquals("two", service.format(bundleName, null, "key1", null));
+            assertEquals("two", handle.get(null));
+            assertEquals("two", handle.format(Locale.US));
+            service.reloadBundles();
+            assertEquals(generation + 2, service.getGeneration());
+            service.dispose();
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testStatistics() throws Exception
+    {
+        DefaultConfiguration metrics = new DefaultConfiguration("metrics");
+        metrics.setAttribute("object-name", "org.apache.fulcrum.localization:type=Test");
+        conf.addChild(metrics);
+        SimpleLocalizationServiceImpl service = createService();
+        LocalizationStatistics statistics = service.getStatistics();
+
+        service.getString(null, new Locale("ko", "KR"), "key1");
+        service.getString(null, new Locale("ko", "KR"), "key4");
+        service.tryGetString(null, null, "NoSuchKey");
+        service.format(null, null, "format1", 1, 2);
+
+        assertEquals(3, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+        assertEquals(1, statistics.getFormats());
+        assertEquals(1, statistics.getFallbackDepths()[1]);
+        assertEquals(Long.valueOf(1),
+            statistics.getMissingKeys().get("org.apache.fulcrum.localization.BarBundle/NoSuchKey"));
+        assertTrue(statistics.getBundleLoads() > 0);
+        assertTrue(statistics.getCachedBundles() > 0);
+        assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(
+            new ObjectName("org.apache.fulcrum.localization:type=Test"), "Hits"));
+
+        service.dispose();
+    }
+}
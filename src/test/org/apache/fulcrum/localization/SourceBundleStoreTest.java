@@ -0,0 +1,119 @@
+package org.apache.fulcrum.localization;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the {@link org.apache.fulcrum.localization.SourceBundleStore}.
+ *
+ * @version $Id$
+ */
+public class SourceBundleStoreTest
+{
+    private static final String BUNDLE = "Messages";
+
+    /**
+     * A source whose German texts are read before, and returned after,
+     * a refresh.
+     */
+    private static final class RacingSource implements BundleSource
+    {
+        final CountDownLatch reading = new CountDownLatch(1);
+
+        final CountDownLatch refreshed = new CountDownLatch(1);
+
+        volatile String value = "alt";
+
+        volatile long version = 1;
+
+        @Override
+        public Map<String, Map<String, String>> load(Locale locale) throws IOException
+        {
+            Map<String, Map<String, String>> texts =
+                Collections.singletonMap(BUNDLE, Collections.singletonMap("key", value));
+            if (Locale.GERMAN.equals(locale) && reading.getCount() > 0)
+            {
+                reading.countDown();
+                try
+                {
+                    refreshed.await();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new IOException(e);
+                }
+            }
+            return texts;
+        }
+
+        @Override
+        public long getVersion()
+        {
+            return version;
+        }
+
+        @Override
+        public List<BundleChange> getChanges(long since)
+        {
+            return (since < 2 ? Collections.singletonList(new BundleChange(BUNDLE, Locale.GERMAN, "key", "neu"))
+                : Collections.<BundleChange>emptyList());
+        }
+    }
+
+    @Test
+    public void testChangeDuringLoad() throws Exception
+    {
+        RacingSource source = new RacingSource();
+        SourceBundleStore store = new SourceBundleStore(source);
+        assertEquals("alt", store.getTexts(BUNDLE, Locale.ROOT).get("key"));
+
+        CompletableFuture<Map<String, String>> german = CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return store.getTexts(BUNDLE, Locale.GERMAN);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        });
+        source.reading.await();
+        source.value = "neu";
+        source.version = 2;
+        store.refresh();
+        source.refreshed.countDown();
+
+        assertEquals("neu", german.get().get("key"));
+        assertEquals("neu", store.getTexts(BUNDLE, Locale.GERMAN).get("key"));
+    }
+}